@@ -18,6 +18,15 @@ import com.vmware.lmock.exception.CheckerCreationException;
  * </p>
  */
 public final class ByteChecker extends ComparableChecker<Byte> {
+    /** Asserted if the range has a lower bound. */
+    private final boolean hasMin;
+    /** Lower bound of the range, if any. */
+    private final byte minValue;
+    /** Asserted if the range has an upper bound. */
+    private final boolean hasMax;
+    /** Upper bound of the range, if any. */
+    private final byte maxValue;
+
     /**
      * Basic creator of the checker.
      *
@@ -30,6 +39,26 @@ public final class ByteChecker extends ComparableChecker<Byte> {
      */
     private ByteChecker(Byte min, Byte max) {
         super(Byte.class, min, max);
+        hasMin = min != null;
+        minValue = hasMin ? min : 0;
+        hasMax = max != null;
+        maxValue = hasMax ? max : 0;
+    }
+
+    /**
+     * Checks an unboxed value regarding the defined range.
+     *
+     * @param value
+     *            the checked value
+     * @return <code>true</code> if the value is within the range.
+     */
+    private boolean isWithinRange(byte value) {
+        return (!hasMin || value >= minValue) && (!hasMax || value <= maxValue);
+    }
+
+    @Override
+    public boolean valueIsCompatibleWith(Byte value) {
+        return value != null && isWithinRange(value.byteValue());
     }
 
     /**
@@ -93,6 +93,16 @@ public class ComparableChecker<T extends Comparable<T>> implements Checker<T> {
                 && valueIsLowerOrEqualToMax(value);
     }
 
+    /** @return The lower bound of the allowed range, null if none. */
+    public T getMin() {
+        return min;
+    }
+
+    /** @return The upper bound of the allowed range, null if none. */
+    public T getMax() {
+        return max;
+    }
+
     @Override
     public Class<T> getRelatedClass() {
         return clazz;
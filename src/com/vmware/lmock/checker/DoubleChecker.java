@@ -18,6 +18,15 @@ import com.vmware.lmock.exception.CheckerCreationException;
  * </p>
  */
 public class DoubleChecker extends ComparableChecker<Double> {
+    /** Asserted if the range has a lower bound. */
+    private final boolean hasMin;
+    /** Lower bound of the range, if any. */
+    private final double minValue;
+    /** Asserted if the range has an upper bound. */
+    private final boolean hasMax;
+    /** Upper bound of the range, if any. */
+    private final double maxValue;
+
     /**
      * Basic creator of the checker.
      *
@@ -30,6 +39,27 @@ public class DoubleChecker extends ComparableChecker<Double> {
      */
     private DoubleChecker(Double min, Double max) {
         super(Double.class, min, max);
+        hasMin = min != null;
+        minValue = hasMin ? min : 0;
+        hasMax = max != null;
+        maxValue = hasMax ? max : 0;
+    }
+
+    /**
+     * Checks an unboxed value regarding the defined range.
+     *
+     * @param value
+     *            the checked value
+     * @return <code>true</code> if the value is within the range.
+     */
+    private boolean isWithinRange(double value) {
+        return (!hasMin || Double.compare(value, minValue) >= 0)
+          && (!hasMax || Double.compare(value, maxValue) <= 0);
+    }
+
+    @Override
+    public boolean valueIsCompatibleWith(Double value) {
+        return value != null && isWithinRange(value.doubleValue());
     }
 
     /**
@@ -18,6 +18,15 @@ import com.vmware.lmock.exception.CheckerCreationException;
  * </p>
  */
 public final class IntegerChecker extends ComparableChecker<Integer> {
+    /** Asserted if the range has a lower bound. */
+    private final boolean hasMin;
+    /** Lower bound of the range, if any. */
+    private final int minValue;
+    /** Asserted if the range has an upper bound. */
+    private final boolean hasMax;
+    /** Upper bound of the range, if any. */
+    private final int maxValue;
+
     /**
      * Basic creator of the checker.
      *
@@ -30,6 +39,26 @@ public final class IntegerChecker extends ComparableChecker<Integer> {
      */
     private IntegerChecker(Integer min, Integer max) {
         super(Integer.class, min, max);
+        hasMin = min != null;
+        minValue = hasMin ? min : 0;
+        hasMax = max != null;
+        maxValue = hasMax ? max : 0;
+    }
+
+    /**
+     * Checks an unboxed value regarding the defined range.
+     *
+     * @param value
+     *            the checked value
+     * @return <code>true</code> if the value is within the range.
+     */
+    private boolean isWithinRange(int value) {
+        return (!hasMin || value >= minValue) && (!hasMax || value <= maxValue);
+    }
+
+    @Override
+    public boolean valueIsCompatibleWith(Integer value) {
+        return value != null && isWithinRange(value.intValue());
     }
 
     /**
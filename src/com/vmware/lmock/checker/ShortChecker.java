@@ -18,6 +18,15 @@ import com.vmware.lmock.exception.CheckerCreationException;
  * </p>
  */
 public class ShortChecker extends ComparableChecker<Short> {
+    /** Asserted if the range has a lower bound. */
+    private final boolean hasMin;
+    /** Lower bound of the range, if any. */
+    private final short minValue;
+    /** Asserted if the range has an upper bound. */
+    private final boolean hasMax;
+    /** Upper bound of the range, if any. */
+    private final short maxValue;
+
     /**
      * Basic creator of the checker.
      *
@@ -30,6 +39,26 @@ public class ShortChecker extends ComparableChecker<Short> {
      */
     private ShortChecker(Short min, Short max) {
         super(Short.class, min, max);
+        hasMin = min != null;
+        minValue = hasMin ? min : 0;
+        hasMax = max != null;
+        maxValue = hasMax ? max : 0;
+    }
+
+    /**
+     * Checks an unboxed value regarding the defined range.
+     *
+     * @param value
+     *            the checked value
+     * @return <code>true</code> if the value is within the range.
+     */
+    private boolean isWithinRange(short value) {
+        return (!hasMin || value >= minValue) && (!hasMax || value <= maxValue);
+    }
+
+    @Override
+    public boolean valueIsCompatibleWith(Short value) {
+        return value != null && isWithinRange(value.shortValue());
     }
 
     /**
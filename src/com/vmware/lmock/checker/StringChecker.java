@@ -7,6 +7,8 @@
  * ************************************************************************** */
 package com.vmware.lmock.checker;
 
+import java.util.regex.Pattern;
+
 /**
  * Basic class from which the string checkers should derive.
  *
@@ -21,21 +23,59 @@ package com.vmware.lmock.checker;
  * </p>
  * <ul>
  * <li>verifies that the reference is null if the value is null</li>
- * <li>converts the value to a lower case string if the checker is case
- * insensitive</li>
- * <li>compares the value with the reference</li>
+ * <li>compares the value with the reference, ignoring the case if the checker
+ * is case insensitive</li>
  * </ul>
  *
  * <p>
+ * Checkers are invoked for every candidate invocation, so they avoid to
+ * allocate anything: the case is ignored by comparing regions of strings
+ * rather than converting the values, and regular expressions are compiled
+ * once for all.
+ * </p>
+ *
+ * <p>
  * String checkers are created by specific factory methods, defining the type of
  * test done.
  * </p>
  */
 public abstract class StringChecker implements Checker<String> {
-    /** String describing the type of the reference pattern. */
-    private final String type;
+    /**
+     * The different types of comparison done by string checkers.
+     */
+    public enum Type {
+        /** The values are equal to the reference. */
+        EQUALS("equals"),
+        /** The values contain the reference. */
+        CONTAINS("contains"),
+        /** The values start with the reference. */
+        STARTS_WITH("starts with"),
+        /** The values end with the reference. */
+        ENDS_WITH("ends with"),
+        /** The values match the reference regular expression. */
+        MATCHES("matches");
+        /** Description of the type in the checker strings. */
+        private final String description;
+
+        /**
+         * Creates a new type.
+         *
+         * @param description
+         *            description of the type in the checker strings
+         */
+        private Type(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+    /** The type of comparison done by this checker. */
+    private final Type type;
     /** Pattern or string to check against the user supplied values. */
-    private String reference;
+    private final String reference;
     /** Asserted when the checker is case-insensitive. */
     private boolean isCaseInsensitive;
 
@@ -43,11 +83,11 @@ public abstract class StringChecker implements Checker<String> {
      * Creates a new string checker.
      *
      * @param type
-     *            string describing the type of the reference pattern
+     *            the type of comparison done by this checker
      * @param reference
      *            the pattern or string to check against the user supplied value
      */
-    private StringChecker(String type, String reference) {
+    private StringChecker(Type type, String reference) {
         this.type = type;
         this.reference = reference;
         isCaseInsensitive = false;
@@ -58,9 +98,21 @@ public abstract class StringChecker implements Checker<String> {
      */
     public void caseInsensitive() {
         isCaseInsensitive = true;
-        if (reference != null) {
-            reference = reference.toLowerCase();
-        }
+    }
+
+    /** @return The type of comparison done by this checker. */
+    public Type getType() {
+        return type;
+    }
+
+    /** @return The reference pattern or string, may be <code>null</code>. */
+    public String getReference() {
+        return reference;
+    }
+
+    /** @return <code>true</code> if this checker is case insensitive. */
+    public boolean isCaseInsensitive() {
+        return isCaseInsensitive;
     }
 
     @Override
@@ -80,8 +132,7 @@ public abstract class StringChecker implements Checker<String> {
         } else if (reference == null) {
             return false;
         } else {
-            String argument = isCaseInsensitive ? value.toLowerCase() : value;
-            return valueMatchesReference(reference, argument);
+            return valueMatchesReference(reference, value, isCaseInsensitive);
         }
     }
 
@@ -90,18 +141,19 @@ public abstract class StringChecker implements Checker<String> {
      *
      * <p>
      * Notice that neither the input reference string/pattern nor the value are
-     * null. Also notice that case-insensitivity has already been resolved when
-     * invoking this method.
+     * null.
      * </p>
      *
      * @param reference
      *            the reference string or pattern
      * @param value
      *            the checked value
+     * @param ignoreCase
+     *            <code>true</code> if the comparison is case insensitive
      * @return <code>true</code> if the value matches the reference.
      */
     protected abstract boolean valueMatchesReference(String reference,
-      String value);
+      String value, boolean ignoreCase);
 
     /**
      * Creates a new string checker that checks the equality of strings with a
@@ -111,11 +163,11 @@ public abstract class StringChecker implements Checker<String> {
      *            the reference string
      */
     public static StringChecker valuesEqual(String reference) {
-        return new StringChecker("equals", reference) {
+        return new StringChecker(Type.EQUALS, reference) {
             @Override
             protected boolean valueMatchesReference(String reference,
-              String value) {
-                return reference.equals(value);
+              String value, boolean ignoreCase) {
+                return ignoreCase ? reference.equalsIgnoreCase(value) : reference.equals(value);
             }
         };
     }
@@ -128,29 +180,110 @@ public abstract class StringChecker implements Checker<String> {
      *            the reference string
      */
     public static StringChecker valuesContain(String reference) {
-        return new StringChecker("contains", reference) {
+        return new StringChecker(Type.CONTAINS, reference) {
             @Override
             protected boolean valueMatchesReference(String reference,
-              String value) {
-                return value.contains(reference);
+              String value, boolean ignoreCase) {
+                if (!ignoreCase) {
+                    return value.contains(reference);
+                }
+
+                int last = value.length() - reference.length();
+                for (int offset = 0; offset <= last; offset++) {
+                    if (value.regionMatches(true, offset, reference, 0, reference.length())) {
+                        return true;
+                    }
+                }
+                return false;
             }
         };
     }
 
     /**
-     * Creates a new string checker that checks that string match a reference
-     * regular expression.
+     * Creates a new string checker that checks the values start with a
+     * reference value.
      *
      * @param reference
-     *            the reference regular expression
+     *            the reference prefix
      */
-    public static StringChecker valuesMatch(String reference) {
-        return new StringChecker("matches", reference) {
+    public static StringChecker valuesStartWith(String reference) {
+        return new StringChecker(Type.STARTS_WITH, reference) {
+            @Override
+            protected boolean valueMatchesReference(String reference,
+              String value, boolean ignoreCase) {
+                return value.regionMatches(ignoreCase, 0, reference, 0, reference.length());
+            }
+        };
+    }
+
+    /**
+     * Creates a new string checker that checks the values end with a
+     * reference value.
+     *
+     * @param reference
+     *            the reference suffix
+     */
+    public static StringChecker valuesEndWith(String reference) {
+        return new StringChecker(Type.ENDS_WITH, reference) {
             @Override
             protected boolean valueMatchesReference(String reference,
-              String value) {
-                return value.matches(reference);
+              String value, boolean ignoreCase) {
+                int offset = value.length() - reference.length();
+                return offset >= 0
+                  && value.regionMatches(ignoreCase, offset, reference, 0, reference.length());
             }
         };
     }
+
+    /**
+     * A checker comparing the values with a regular expression.
+     *
+     * <p>
+     * The expression is compiled when the checker is created, and again if it
+     * becomes case insensitive.
+     * </p>
+     */
+    private static final class PatternChecker extends StringChecker {
+        /** The compiled reference, null if the reference is null. */
+        private Pattern pattern;
+
+        /**
+         * Creates a new checker.
+         *
+         * @param reference
+         *            the reference regular expression
+         */
+        PatternChecker(String reference) {
+            super(Type.MATCHES, reference);
+            if (reference != null) {
+                pattern = Pattern.compile(reference);
+            }
+        }
+
+        @Override
+        public void caseInsensitive() {
+            super.caseInsensitive();
+            if (pattern != null) {
+                pattern = Pattern.compile(pattern.pattern(),
+                  Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            }
+        }
+
+        @Override
+        protected boolean valueMatchesReference(String reference,
+          String value, boolean ignoreCase) {
+            return pattern.matcher(value).matches();
+        }
+    }
+
+    /**
+     * Creates a new string checker that checks that string match a reference
+     * regular expression.
+     *
+     * @param reference
+     *            the reference regular expression
+     */
+    public static StringChecker valuesMatch(String reference) {
+        return new PatternChecker(reference);
+    }
 }
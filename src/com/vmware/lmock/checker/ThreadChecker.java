@@ -21,6 +21,31 @@ public abstract class ThreadChecker implements Checker<Thread> {
         return Thread.class;
     }
 
+    /**
+     * Tells whether this checker matches one single thread object.
+     *
+     * <p>
+     * Thread dispatchers use this information to find the matching checker
+     * of a thread without trying every checker.
+     * </p>
+     *
+     * @return The only thread matched by this checker, <code>null</code> if
+     *         this checker is not bound to a specific thread.
+     */
+    public Thread getMatchedThread() {
+        return null;
+    }
+
+    /**
+     * Tells whether this checker matches the threads with a given name.
+     *
+     * @return The name of the threads matched by this checker,
+     *         <code>null</code> if this checker does not simply compare names.
+     */
+    public String getMatchedName() {
+        return null;
+    }
+
     /**
      * Creates a checker that matches exactly one thread.
      *
@@ -33,6 +58,11 @@ public abstract class ThreadChecker implements Checker<Thread> {
             public boolean valueIsCompatibleWith(Thread value) {
                 return thread == value;
             }
+
+            @Override
+            public Thread getMatchedThread() {
+                return thread;
+            }
         };
     }
 
@@ -49,6 +79,11 @@ public abstract class ThreadChecker implements Checker<Thread> {
             public boolean valueIsCompatibleWith(Thread value) {
                 return value.getName() != null && value.getName().equals(name);
             }
+
+            @Override
+            public String getMatchedName() {
+                return name;
+            }
         };
     }
 
@@ -8,6 +8,7 @@
 package com.vmware.lmock.impl;
 
 import java.lang.reflect.Array;
+import java.util.Arrays;
 
 import com.vmware.lmock.checker.Checker;
 
@@ -25,6 +26,11 @@ import com.vmware.lmock.checker.Checker;
  * <p>
  * Also notice that an array checker is always proceeding with non-null arrays.
  * </p>
+ * <p>
+ * Arrays of the same primitive type are compared without boxing their items,
+ * and the items of arrays of objects are compared without creating any
+ * intermediate checker.
+ * </p>
  */
 class ArrayChecker implements Checker<Object> {
     /** Reference array. */
@@ -48,22 +54,95 @@ class ArrayChecker implements Checker<Object> {
     /**
      * Compares two items of an array.
      *
+     * <p>
+     * This is what the checker produced by the object checker factory for the
+     * first item would do, without creating that checker.
+     * </p>
+     *
      * @param item1
      *            the first element to check
      * @param item2
      *            the second element to check
      */
+    @SuppressWarnings("unchecked")
     private static boolean arrayItemsAreEqual(Object item1, Object item2) {
         // Loop back to a checker to validate the classes and the values.
         // This is where the "dynamic" aspect of this checker is: if the
         // contents of the reference array is changed we compare the supplied
         // data with the new values.
-        return ObjectCheckerFactory.getExistingOrNewChecker(item1).valueIsCompatibleWith(item2);
+        if (item1 instanceof Checker<?>) {
+            return ((Checker<Object>) item1).valueIsCompatibleWith(item2);
+        } else if (item1 != null && item1.getClass().isArray()) {
+            return arrayIsEqualTo(item1, item2);
+        } else {
+            return SimpleObjectChecker.valuesAreEqual(Mock.getObjectOrMock(item1),
+              Mock.getObjectOrMock(item2));
+        }
+    }
+
+    /**
+     * Compares two arrays of the same primitive type.
+     *
+     * <p>
+     * The comparison of floats and doubles relies on their bits, exactly as
+     * the <code>equals</code> method of their wrapping classes.
+     * </p>
+     *
+     * @param array1
+     *            the first array to check
+     * @param array2
+     *            the second array to check, of the same class
+     * @return true if the two arrays have the same contents.
+     */
+    private static boolean primitiveArraysAreEqual(Object array1, Object array2) {
+        Class<?> type = array1.getClass().getComponentType();
+        if (type == byte.class) {
+            return Arrays.equals((byte[]) array1, (byte[]) array2);
+        } else if (type == int.class) {
+            return Arrays.equals((int[]) array1, (int[]) array2);
+        } else if (type == long.class) {
+            return Arrays.equals((long[]) array1, (long[]) array2);
+        } else if (type == char.class) {
+            return Arrays.equals((char[]) array1, (char[]) array2);
+        } else if (type == short.class) {
+            return Arrays.equals((short[]) array1, (short[]) array2);
+        } else if (type == boolean.class) {
+            return Arrays.equals((boolean[]) array1, (boolean[]) array2);
+        } else if (type == float.class) {
+            return Arrays.equals((float[]) array1, (float[]) array2);
+        } else {
+            return Arrays.equals((double[]) array1, (double[]) array2);
+        }
+    }
+
+    /**
+     * Compares the contents of two arrays of objects.
+     *
+     * @param array1
+     *            the first array to check
+     * @param array2
+     *            the second array to check, of the same length
+     * @return true if the two arrays have the same contents.
+     */
+    private static boolean objectArraysAreEqual(Object[] array1, Object[] array2) {
+        for (int index = 0; index < array1.length; index++) {
+            if (!arrayItemsAreEqual(array1[index], array2[index])) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     /**
      * Compares the contents of two arrays.
      *
+     * <p>
+     * The arrays of the same primitive type and the arrays of objects are
+     * compared directly. Other combinations (e.g. an <code>int[]</code> and an
+     * <code>Integer[]</code>) are compared item by item.
+     * </p>
+     *
      * @param array1
      *            the first array to check
      * @param array2
@@ -76,6 +155,11 @@ class ArrayChecker implements Checker<Object> {
 
         if (len1 != len2) {
             return false;
+        } else if (array1 instanceof Object[] && array2 instanceof Object[]) {
+            return objectArraysAreEqual((Object[]) array1, (Object[]) array2);
+        } else if (array1.getClass() == array2.getClass()) {
+            // Same class, not arrays of objects: arrays of the same primitive.
+            return primitiveArraysAreEqual(array1, array2);
         } else {
             // Note: we do not check the classes enclosed by the arrays, because
             // we will do it for each enclosed item.
@@ -91,8 +175,16 @@ class ArrayChecker implements Checker<Object> {
         }
     }
 
-    @Override
-    public boolean valueIsCompatibleWith(Object value) {
+    /**
+     * Compares a value with a reference array.
+     *
+     * @param array
+     *            the non-null reference array
+     * @param value
+     *            the checked value
+     * @return true if the value is an array with the same contents.
+     */
+    private static boolean arrayIsEqualTo(Object array, Object value) {
         // Be sure that we're on the same line regarding mock objects.
         Object actualObject = Mock.getObjectOrMock(value);
 
@@ -102,12 +194,17 @@ class ArrayChecker implements Checker<Object> {
         }
 
         if (actualObject.getClass().isArray()) {
-            return arraysAreEqual(referenceArray, actualObject);
+            return arraysAreEqual(array, actualObject);
         } else {
             return false;
         }
     }
 
+    @Override
+    public boolean valueIsCompatibleWith(Object value) {
+        return arrayIsEqualTo(referenceArray, value);
+    }
+
     @Override
     public Class<?> getRelatedClass() {
         // Remember that the reference value cannot be null.
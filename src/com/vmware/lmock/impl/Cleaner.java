@@ -10,6 +10,8 @@ package com.vmware.lmock.impl;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * A central point for cleaning the invocation handlers put during a test.
@@ -25,9 +27,25 @@ import java.util.List;
  * </ul>
  *
  * <p>
- * The cleaner enriches a list of registered mock (<code>register</code>) and
- * calls all the registered mock when the method <code>cleanup</code> is
- * invoked.
+ * The cleaner keeps track of the mocks to which a handler was assigned
+ * (<code>register</code>) and cleans them up when the method
+ * <code>cleanup</code> is invoked. Once cleaned up, a mock holds no more
+ * handler, so it is forgotten until it is registered again: the cleanup only
+ * visits the mocks actually used since the previous one.
+ * </p>
+ *
+ * <p>
+ * The registered mocks are weakly referenced, so that the mocks dropped by the
+ * tests can be garbage collected. Since mocks do not redefine
+ * <code>equals</code> and <code>hashCode</code>, they are compared by
+ * identity, which makes a registration cost constant.
+ * </p>
+ *
+ * <p>
+ * Directives and scenarios are specified by a single thread, so there is one
+ * cleaner per thread: the stories run by different threads do not clean up
+ * each other's specifications. The cleanup also unlinks the mocks from the
+ * story begun by the current thread, if any (see <code>StoryContext</code>).
  * </p>
  *
  * <p>
@@ -35,35 +53,41 @@ import java.util.List;
  * </p>
  */
 public class Cleaner implements Iterable<Mock> {
-    /** List of registered mocks. */
-    private final List<Mock> mockList = new ArrayList<Mock>();
-    /** The cleaner singleton. */
-    private static final Cleaner cleaner = new Cleaner();
+    /** The registered mocks, used as a weak set. */
+    private final Map<Mock, Boolean> mocks = new WeakHashMap<Mock, Boolean>();
+    /** The cleaner of each thread. */
+    private static final ThreadLocal<Cleaner> cleaners = new ThreadLocal<Cleaner>() {
+        @Override
+        protected Cleaner initialValue() {
+            return new Cleaner();
+        }
+    };
 
     /**
-     * Checks if a given mock is already known by the cleaner.
+     * Registers a new mock so that it will be cleaned up.
      *
      * @param mock
-     *            the requested mock
-     * @return <code>true</code> if the specified mock is recognized.
+     *            the registered mock
      */
-    private boolean isMockRegistered(Mock mock) {
-        return mockList.contains(mock);
+    private void registerMock(Mock mock) {
+        mocks.put(mock, Boolean.TRUE);
     }
 
     /**
-     * Registers a new mock so that it will be cleaned up.
+     * Forgets all the registered mocks.
      *
-     * @param mock
-     *            the registered mock
+     * @return The mocks that were registered.
      */
-    private void registerMock(Mock mock) {
-        mockList.add(mock);
+    private List<Mock> unregisterMocks() {
+        List<Mock> registered = new ArrayList<Mock>(mocks.keySet());
+        mocks.clear();
+        return registered;
     }
 
+    /** Iterates over a snapshot of the registered mocks. */
     @Override
     public Iterator<Mock> iterator() {
-        return mockList.iterator();
+        return new ArrayList<Mock>(mocks.keySet()).iterator();
     }
 
     /**
@@ -73,16 +97,16 @@ public class Cleaner implements Iterable<Mock> {
      *            the registered mock
      */
     protected static void register(Mock mock) {
-        if (!cleaner.isMockRegistered(mock)) {
-            cleaner.registerMock(mock);
-        }
+        cleaners.get().registerMock(mock);
     }
 
     /**
-     * Cleans up all the registered mocks.
+     * Cleans up all the mocks registered by the current thread, and unlinks
+     * the mocks from the story begun by this thread.
      */
     public static void cleanup() {
-        for (Mock mock : cleaner) {
+        StoryContext.cleanupCurrentThread();
+        for (Mock mock : cleaners.get().unregisterMocks()) {
             mock.cleanupInvocationHandlers();
         }
     }
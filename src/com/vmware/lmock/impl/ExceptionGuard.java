@@ -30,15 +30,14 @@ import com.vmware.lmock.exception.LMRuntimeException;
  * </ul>
  *
  * <p>
- * In practice, the system implements a single guard, which can be accessed
- * at any time from any method, but exceptions are guarded if and only if
- * the guard is enabled.
+ * In practice, each story has its own guard (see <code>StoryContext</code>),
+ * which can be accessed at any time from any method, but exceptions are
+ * guarded if and only if the guard is enabled.
  * </p>
  *
  * <p>
- * <i>Implementation note: the choice for a singleton is more a matter of
- * simplicity since in practice guarded exceptions can be thrown by the
- * invocation processor or by a mock (unexpected invocation).</i>
+ * Since the invocations of the different threads of a story are processed
+ * concurrently, the methods of the guard are synchronized.
  * </p>
  */
 final class ExceptionGuard {
@@ -51,13 +50,11 @@ final class ExceptionGuard {
     private ExpectationError lastError;
     /** Set to <code>true</code> when the exception guard is turned on. */
     private boolean enabled;
-    /** The unique exception guard in the system. */
-    private static final ExceptionGuard guard = new ExceptionGuard();
 
     /**
      * Creates the exception guard, disabled for the moment.
      */
-    private ExceptionGuard() {
+    ExceptionGuard() {
         this.enabled = false;
     }
 
@@ -74,7 +71,7 @@ final class ExceptionGuard {
      * @param excpt
      *            the exception
      */
-    void record(LMRuntimeException excpt) {
+    synchronized void record(LMRuntimeException excpt) {
         logger.trace("record", "LMRuntimeException", excpt);
         if (enabled && recordedNothing()) {
             this.lastException = excpt;
@@ -87,7 +84,7 @@ final class ExceptionGuard {
      * @param error
      *            the error
      */
-    void record(ExpectationError error) {
+    synchronized void record(ExpectationError error) {
         logger.trace("record", "ExpectationError", error);
         if (enabled && recordedNothing()) {
             this.lastError = error;
@@ -107,7 +104,7 @@ final class ExceptionGuard {
     }
 
     /** If an exception or error was guarded, throw it. */
-    void throwIfPresent() {
+    synchronized void throwIfPresent() {
         if (enabled) {
             if (lastException != null) {
                 logger.trace("throwIfPresent", "throwing guarded exception");
@@ -127,7 +124,7 @@ final class ExceptionGuard {
      * are active.
      * </p>
      */
-    void enable() {
+    synchronized void enable() {
         logger.trace("enable");
         clearToState(true);
     }
@@ -140,13 +137,8 @@ final class ExceptionGuard {
      * to record or throw exceptions is dummy.
      * </p>
      */
-    void disable() {
+    synchronized void disable() {
         logger.trace("disable");
         clearToState(false);
     }
-
-    /** @return The singleton. */
-    static ExceptionGuard get() {
-        return guard;
-    }
 }
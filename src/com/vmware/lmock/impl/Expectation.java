@@ -43,6 +43,8 @@ public final class Expectation extends InvocationChecker implements
     private InvocationResultProvider invocationResult;
     /** Expected occurrences of this expectation. By default, none specific. */
     private OccurrenceChecker occurrences = Occurrences.any();
+    /** The unordered group to which this expectation belongs, if any. */
+    private UnorderedGroup group;
 
     /**
      * Creates a new expectation, assuming that we know the method.
@@ -56,7 +58,7 @@ public final class Expectation extends InvocationChecker implements
      */
     protected Expectation(Object mock, Method method) {
         super(mock, method);
-        invocationResult = InvocationResult.getDefaultResultForClass(method.getReturnType());
+        invocationResult = getDefaultResult();
     }
 
     /** @return The occurrences of this expectation, never null. */
@@ -64,6 +66,24 @@ public final class Expectation extends InvocationChecker implements
         return occurrences;
     }
 
+    /**
+     * @return The unordered group to which this expectation belongs,
+     *         <code>null</code> if none.
+     */
+    UnorderedGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * Puts this expectation into an unordered group.
+     *
+     * @param group
+     *            the group
+     */
+    void setGroup(UnorderedGroup group) {
+        this.group = group;
+    }
+
     @Override
     public <T> Expectation willReturn(T result) {
         invocationResult = new InvocationResultChecker(getMethod()).willReturn(result);
@@ -100,18 +100,42 @@ final class ExpectationList implements Iterable<Expectation> {
     }
 
     /**
-     * Gets to the next expectation, if any, without changing the current index.
+     * Skips a given number of expectations.
      *
-     * @return The next expectation in the list, null if none.
+     * @param count
+     *            the number of skipped expectations
+     * @return The new current expectation, null if none.
      */
-    Expectation nextExpectationWithoutChangingCurrent() {
-        if (currentExpectationIndex + 1 < expectationList.size()) {
-            return expectationList.get(currentExpectationIndex + 1);
+    Expectation skipExpectations(int count) {
+        currentExpectationIndex += count;
+        return getCurrentExpectation();
+    }
+
+    /**
+     * Gets an expectation following the current one, without changing the
+     * current index.
+     *
+     * @param count
+     *            the distance from the current expectation
+     * @return The requested expectation, null if none.
+     */
+    Expectation getExpectationAfter(int count) {
+        if (currentExpectationIndex + count < expectationList.size()) {
+            return expectationList.get(currentExpectationIndex + count);
         } else {
             return null;
         }
     }
 
+    /**
+     * Gets to the next expectation, if any, without changing the current index.
+     *
+     * @return The next expectation in the list, null if none.
+     */
+    Expectation nextExpectationWithoutChangingCurrent() {
+        return getExpectationAfter(1);
+    }
+
     /**
      * Rewinds to the beginning of the list.
      */
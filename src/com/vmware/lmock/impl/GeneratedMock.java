@@ -0,0 +1,97 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.impl;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * Base class of the mock classes generated at runtime.
+ *
+ * <p>
+ * A generated class implements the mocked interface. Each of its methods
+ * packs its arguments and calls <code>dispatch</code> with the ordinal of the
+ * method, which forwards the invocation to the mock. This replaces the proxies
+ * when the mock classes are generated (see
+ * <code>Mock.generateMockClasses</code>).
+ * </p>
+ *
+ * <p>
+ * As with proxies, a checked exception which is not declared by the invoked
+ * method is wrapped into an <code>UndeclaredThrowableException</code>.
+ * </p>
+ *
+ * <p>
+ * This class must be public for the generated classes, which belong to their
+ * own class loaders, to extend it. It is not intended to be used otherwise.
+ * </p>
+ */
+public abstract class GeneratedMock {
+    /** The mock handling the invocations. */
+    private final Mock mock;
+
+    /**
+     * Creates a new generated mock object.
+     *
+     * @param mock
+     *            the mock handling the invocations
+     */
+    protected GeneratedMock(Mock mock) {
+        this.mock = mock;
+    }
+
+    /** @return The mock handling the invocations. */
+    final Mock getMock() {
+        return mock;
+    }
+
+    /**
+     * Tells whether a method declares a checked exception.
+     *
+     * @param method
+     *            the method
+     * @param exception
+     *            the checked exception
+     * @return <code>true</code> if the exception can be thrown by the method.
+     */
+    private static boolean exceptionIsDeclared(Method method, Throwable exception) {
+        for (Class<?> declared : method.getExceptionTypes()) {
+            if (declared.isInstance(exception)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forwards an invocation to the mock.
+     *
+     * @param ordinal
+     *            the ordinal of the invoked method
+     * @param args
+     *            the arguments of the invocation, <code>null</code> if none
+     * @return The result of the invocation.
+     * @throws Throwable
+     *             The exception thrown by the invocation.
+     */
+    protected final Object dispatch(int ordinal, Object[] args) throws Throwable {
+        try {
+            return mock.invoke(this, ordinal, args);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            if (exceptionIsDeclared(mock.getMethodTable().getMethod(ordinal), e)) {
+                throw e;
+            } else {
+                throw new UndeclaredThrowableException(e);
+            }
+        }
+    }
+}
@@ -11,14 +11,78 @@ import java.lang.reflect.Method;
 
 /**
  * Internal representation of an invocation issued by the user.
+ *
+ * <p>
+ * An invocation only lives during the call of the mock: the handlers never
+ * keep a reference to it. So the invocations are not allocated for each
+ * call, but taken from a per-thread stack (<code>acquire</code>) and given
+ * back once the call completes (<code>release</code>). The stack allows the
+ * nested calls, e.g. when a checker or a result invokes another mock.
+ * </p>
  */
 final class Invocation {
-    private final Mock mock;
-    private final Method method;
-    private final Object[] args;
+    /**
+     * The invocations of a thread, reused from one call to the other.
+     */
+    private static final class Stack {
+        /** The invocations, the first <code>depth</code> being in use. */
+        private Invocation[] frames = new Invocation[4];
+        /** Number of ongoing invocations. */
+        private int depth;
+
+        /** @return A free invocation, pushed on the stack. */
+        Invocation push() {
+            if (depth == frames.length) {
+                Invocation[] newFrames = new Invocation[2 * frames.length];
+                System.arraycopy(frames, 0, newFrames, 0, depth);
+                frames = newFrames;
+            }
+
+            Invocation frame = frames[depth];
+            if (frame == null) {
+                frame = new Invocation(this);
+                frames[depth] = frame;
+            }
+            depth++;
+            return frame;
+        }
+
+        /** Pops the latest invocation. */
+        void pop() {
+            depth--;
+        }
+    }
+    /** The stack of each thread. */
+    private static final ThreadLocal<Stack> stacks = new ThreadLocal<Stack>() {
+        @Override
+        protected Stack initialValue() {
+            return new Stack();
+        }
+    };
+    /** The stack owning this invocation. */
+    private final Stack stack;
+    private Mock mock;
+    private Method method;
+    /** Ordinal of the method in the method table of the mock. */
+    private int methodOrdinal;
+    private Object[] args;
 
     /**
-     * Creates a new invocation.
+     * Creates a new invocation, to be set by <code>acquire</code>.
+     *
+     * @param stack
+     *            the stack owning this invocation
+     */
+    private Invocation(Stack stack) {
+        this.stack = stack;
+    }
+
+    /**
+     * Gets an invocation for the current thread.
+     *
+     * <p>
+     * The invocation must be released by the same thread once processed.
+     * </p>
      *
      * @param mock
      *            the mock catching the invocation
@@ -26,13 +90,34 @@ final class Invocation {
      *            the invoked object
      * @param method
      *            the invoked method
+     * @param methodOrdinal
+     *            the ordinal of the method in the method table of the mock
      * @param args
      *            the arguments passed to the invoked method
+     * @return The invocation.
      */
-    protected Invocation(Mock mock, Object object, Method method, Object[] args) {
-        this.mock = mock;
-        this.method = method;
-        this.args = args;
+    static Invocation acquire(Mock mock, Object object, Method method, int methodOrdinal,
+      Object[] args) {
+        Invocation invocation = stacks.get().push();
+        invocation.mock = mock;
+        invocation.method = method;
+        invocation.methodOrdinal = methodOrdinal;
+        invocation.args = args;
+        return invocation;
+    }
+
+    /**
+     * Gives this invocation back once processed.
+     *
+     * <p>
+     * The references are cleared, in order not to retain the arguments.
+     * </p>
+     */
+    void release() {
+        mock = null;
+        method = null;
+        args = null;
+        stack.pop();
     }
 
     /** @return The mock handling the invocation. */
@@ -45,6 +130,14 @@ final class Invocation {
         return method;
     }
 
+    /**
+     * @return The ordinal of the invoked method in the method table of the
+     *         mock, -1 if the method is not in this table.
+     */
+    int getMethodOrdinal() {
+        return methodOrdinal;
+    }
+
     /** @return The arguments passed to the invoked method. */
     Object[] getArgs() {
         return args;
@@ -35,6 +35,8 @@ class InvocationChecker implements Checker<Invocation> {
     private final Mock proxy;
     /** Expected method name. */
     private final Method method;
+    /** Ordinal of the expected method in the method table of the mock. */
+    private final int methodOrdinal;
     /** List of expected arguments to the method. */
     private final List<Checker<Object>> expectedArguments = new ArrayList<Checker<Object>>();
 
@@ -46,8 +48,29 @@ class InvocationChecker implements Checker<Invocation> {
      * </p>
      */
     private void setupBasicConfiguration() {
-        for (Class<?> type : method.getParameterTypes()) {
-            expectedArguments.add(anyArgumentOf(type));
+        if (methodOrdinal >= 0) {
+            // The checkers are immutable, thus shared with every stub.
+            MethodTable table = proxy.getMethodTable();
+            int argumentCount = table.getParameterTypes(methodOrdinal).length;
+            for (int index = 0; index < argumentCount; index++) {
+                expectedArguments.add(table.getAnyArgumentChecker(methodOrdinal, index));
+            }
+        } else {
+            for (Class<?> type : method.getParameterTypes()) {
+                expectedArguments.add(anyArgumentOf(type));
+            }
+        }
+    }
+
+    /**
+     * @return The result returning the default value of the expected method,
+     *         shared by all the checkers of the method.
+     */
+    protected final InvocationResult getDefaultResult() {
+        if (methodOrdinal >= 0) {
+            return proxy.getMethodTable().getDefaultResult(methodOrdinal);
+        } else {
+            return InvocationResult.getDefaultResultForClass(method.getReturnType());
         }
     }
 
@@ -64,6 +87,7 @@ class InvocationChecker implements Checker<Invocation> {
     protected InvocationChecker(Object mock, Method method) {
         proxy = Mock.getProxyOrThrow(mock);
         this.method = method;
+        methodOrdinal = proxy.getMethodTable().ordinalOf(method);
         setupBasicConfiguration();
     }
 
@@ -110,6 +134,94 @@ class InvocationChecker implements Checker<Invocation> {
         return method;
     }
 
+    /**
+     * @return The ordinal of the expected method in the method table of the
+     *         mock, -1 if the method is not in this table.
+     */
+    final int getMethodOrdinal() {
+        return methodOrdinal;
+    }
+
+    /** @return The number of arguments checked by this. */
+    final int getArgumentCount() {
+        return expectedArguments.size();
+    }
+
+    /**
+     * Gets the checker of one argument.
+     *
+     * @param index
+     *            the argument position
+     * @return The checker of that argument.
+     */
+    final Checker<Object> getArgumentChecker(int index) {
+        return expectedArguments.get(index);
+    }
+
+    /**
+     * Checks whether two methods with different ordinals may still be the same
+     * method.
+     *
+     * <p>
+     * This is the case of an interface redefining an inherited method with
+     * more specific types (e.g. <code>compareTo(String)</code> and
+     * <code>compareTo(Object)</code>), which the proxies see as two methods.
+     * </p>
+     *
+     * @param method1
+     *            the first method
+     * @param method2
+     *            the second method
+     * @return <code>true</code> if one method redefines the other, i.e. they
+     *         have the same name and compatible parameter types, and one of
+     *         them is declared by a parent of the other's class.
+     */
+    private static boolean methodsAreEquivalent(Method method1, Method method2) {
+        Class<?> class1 = method1.getDeclaringClass();
+        Class<?> class2 = method2.getDeclaringClass();
+        if (class1 == class2
+          || !(class1.isAssignableFrom(class2) || class2.isAssignableFrom(class1))
+          || !method1.getName().equals(method2.getName())) {
+            return false;
+        }
+
+        Class<?>[] types1 = method1.getParameterTypes();
+        Class<?>[] types2 = method2.getParameterTypes();
+        if (types1.length != types2.length) {
+            return false;
+        }
+
+        for (int index = 0; index < types1.length; index++) {
+            if (!types1[index].isAssignableFrom(types2[index])
+              && !types2[index].isAssignableFrom(types1[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether an invocation concerns the expected method.
+     *
+     * <p>
+     * The method is identified by its ordinal, computed once for all at
+     * creation time. Hence overloaded methods are not confused. The
+     * comparison of the actual methods is only needed when the ordinals
+     * differ or are not known.
+     * </p>
+     *
+     * @param invocation
+     *            the checked invocation
+     * @return <code>true</code> if the invoked method is the expected one.
+     */
+    private boolean methodIsCompatibleWith(Invocation invocation) {
+        if (methodOrdinal >= 0 && invocation.getMethodOrdinal() == methodOrdinal) {
+            return true;
+        } else {
+            return methodsAreEquivalent(method, invocation.getMethod());
+        }
+    }
+
     /**
      * Validates the invocation regarding the arguments passed to the method.
      */
@@ -119,7 +231,7 @@ class InvocationChecker implements Checker<Invocation> {
             return false;
         }
 
-        if (!invocation.getMethod().getName().equals(method.getName())) {
+        if (!methodIsCompatibleWith(invocation)) {
             return false;
         }
 
@@ -215,8 +215,7 @@ abstract class InvocationCheckerBuilder<T extends InvocationChecker> implements
         closeSpecification();
         // Generate an acceptable returned value for the invocation, in order
         // not to break the overlying proxy.
-        Class<?> returnedType = invocation.getMethod().getReturnType();
-        return InvocationResult.getDefaultResultForClass(returnedType);
+        return builtChecker.getDefaultResult();
     }
 
     /**
@@ -7,8 +7,6 @@
  * ************************************************************************** */
 package com.vmware.lmock.impl;
 
-import java.lang.reflect.Method;
-
 /**
  * Hooks to the most common basic methods of objects.
  *
@@ -36,6 +34,14 @@ import java.lang.reflect.Method;
  * </p>
  *
  * <p>
+ * The hooks have no state: a single table, shared by the whole process, is
+ * returned by <code>get</code>. The hooked methods are recognized by their
+ * ordinal, since every method table assigns the same first ordinals to these
+ * methods. The results of the hooks are built once per mock, so that trying an
+ * invocation does not allocate anything.
+ * </p>
+ *
+ * <p>
  * <b>Note:</b> <code>getClass</code> does not need to be implemented, because
  * the proxies theoretically trap these calls.
  * </p>
@@ -54,84 +60,10 @@ final class InvocationHooks {
          */
         InvocationResult apply(Invocation invocation);
     }
-
-    /**
-     * Inner representation of one hook.
-     */
-    private static final class Hook {
-        /** The hooked method. */
-        private final Method method;
-        private final DefaultHandler defaultHandler;
-
-        /**
-         * Replaces <code>Method.equals()</code>.
-         *
-         * The main reason for this is that we do not really care of the
-         * declaring class of a method, and it may be different. At this level
-         * of the processing, we know who exactly invoked us and why.
-         *
-         * @param other
-         *            the method to compare to our method
-         * @return true if the methods match.
-         */
-        private boolean methodMatch(Method other) {
-            // Note: was checked against the source code of Method.equals.
-            if (method.getName().equals(other.getName())
-              && method.getReturnType().equals(other.getReturnType())) {
-                Class<?>[] methodParams = method.getParameterTypes();
-                Class<?>[] otherParams = other.getParameterTypes();
-                if (methodParams.length == otherParams.length) {
-                    for (int index = 0; index < otherParams.length; index++) {
-                        if (methodParams[index] != otherParams[index]) {
-                            return false;
-                        }
-                    }
-
-                    return true;
-                } else {
-                    return false;
-                }
-            } else {
-                return false;
-            }
-        }
-
-        /**
-         * Creates a hook for a given method.
-         *
-         * @param method
-         *            the method
-         * @param handler
-         *            a default handler for this method
-         */
-        private Hook(Method method, DefaultHandler handler) {
-            this.method = method;
-            defaultHandler = handler;
-        }
-
-        /**
-         * Compares a method with the method enclosed by this hook.
-         *
-         * @param method
-         *            the checked method
-         * @return true if the methods match.
-         */
-        boolean match(Method method) {
-            return methodMatch(method);
-        }
-
-        /**
-         * @return The default handler for the enclosed method, null if not
-         *         enabled.
-         */
-        DefaultHandler getDefaultHandler() {
-            return defaultHandler;
-        }
-    };
-    /** The number of common methods managed by the hooks. */
-    private static final int NR_COMMON_METHODS = 3;
-    /** List of hooks. */
-    private final Hook[] hooks = new Hook[NR_COMMON_METHODS];
+    /** The result of <code>equals</code> when the objects are equal. */
+    private static final InvocationResult EQUAL = InvocationResult.returnValue(true);
+    /** The result of <code>equals</code> when the objects differ. */
+    private static final InvocationResult NOT_EQUAL = InvocationResult.returnValue(false);
     /**
      * The default handler for the <code>equals</code> method.
      *
@@ -140,14 +72,13 @@ final class InvocationHooks {
      * with the invocation mock.
      * </p>
      */
-    private final DefaultHandler equalsDefaultHandler = new DefaultHandler() {
+    private static final DefaultHandler equalsDefaultHandler = new DefaultHandler() {
         @Override
         public InvocationResult apply(Invocation invocation) {
             // Be careful to provide the proper reference when comparing with
             // the mock.
             Object other = Mock.getObjectOrMock(invocation.getArgs()[0]);
-            return InvocationResult.returnValue(invocation.getMock().equals(
-              other));
+            return invocation.getMock().equals(other) ? EQUAL : NOT_EQUAL;
         }
     };
     /**
@@ -158,10 +89,10 @@ final class InvocationHooks {
      * <code>equals</code>).
      * </p>
      */
-    private final DefaultHandler hashCodeDefaultHandler = new DefaultHandler() {
+    private static final DefaultHandler hashCodeDefaultHandler = new DefaultHandler() {
         @Override
         public InvocationResult apply(Invocation invocation) {
-            return InvocationResult.returnValue(invocation.getMock().hashCode());
+            return invocation.getMock().getHashCodeResult();
         }
     };
     /**
@@ -171,45 +102,32 @@ final class InvocationHooks {
      * The returned value is the string representing the invocation mock.
      * </p>
      */
-    private final DefaultHandler toStringDefaultHandler = new DefaultHandler() {
+    private static final DefaultHandler toStringDefaultHandler = new DefaultHandler() {
         @Override
         public InvocationResult apply(Invocation invocation) {
-            return InvocationResult.returnValue(invocation.getMock().toString());
+            return invocation.getMock().getToStringResult();
         }
     };
+    /** The default handlers, by method ordinal. */
+    private static final DefaultHandler[] handlers = new DefaultHandler[MethodTable.NR_OBJECT_METHODS];
 
-    /**
-     * Creates a new set of hooks.
-     */
-    InvocationHooks() {
-        try {
-            hooks[0] = new Hook(Object.class.getMethod("equals", Object.class),
-              equalsDefaultHandler);
-            hooks[1] = new Hook(Object.class.getMethod("hashCode"),
-              hashCodeDefaultHandler);
-            hooks[2] = new Hook(Object.class.getMethod("toString"),
-              toStringDefaultHandler);
-        } catch (NoSuchMethodException e) {
-            // This block is required, but this will never occur in practice.
-            throw new AssertionError("BUG!");
-        }
+    static {
+        handlers[MethodTable.EQUALS] = equalsDefaultHandler;
+        handlers[MethodTable.HASH_CODE] = hashCodeDefaultHandler;
+        handlers[MethodTable.TO_STRING] = toStringDefaultHandler;
     }
+    /** The hooks shared by the whole process. */
+    private static final InvocationHooks instance = new InvocationHooks();
 
     /**
-     * Searches for a hook that matches a method.
-     *
-     * @param method
-     *            the checked method
-     * @return The fetched hook, if found, null otherwise.
+     * Creates the hooks.
      */
-    private Hook searchForHook(Method method) {
-        for (int hookIndex = 0; hookIndex < NR_COMMON_METHODS; hookIndex++) {
-            if (hooks[hookIndex].match(method)) {
-                return hooks[hookIndex];
-            }
-        }
+    private InvocationHooks() {
+    }
 
-        return null;
+    /** @return The hooks. */
+    static InvocationHooks get() {
+        return instance;
     }
 
     /**
@@ -222,17 +140,11 @@ final class InvocationHooks {
      *         otherwise.
      */
     InvocationResult tryInvocation(Invocation invocation) {
-        // Result of this trial.
-        InvocationResult result = null;
-
-        Hook hook = searchForHook(invocation.getMethod());
-        if (hook != null) {
-            DefaultHandler handler = hook.getDefaultHandler();
-            if (handler != null) {
-                return handler.apply(invocation);
-            }
+        int ordinal = invocation.getMethodOrdinal();
+        if (ordinal >= 0 && ordinal < handlers.length) {
+            return handlers[ordinal].apply(invocation);
+        } else {
+            return null;
         }
-
-        return result;
     }
 }
@@ -14,6 +14,12 @@ package com.vmware.lmock.impl;
  * An invocation processor is assigned a stub processor and/or a story
  * processor, invoked in that order.
  * </p>
+ *
+ * <p>
+ * The processor does not lock anything: the stub processor can be read
+ * concurrently, while the story processor serializes the invocations of the
+ * actors sharing its scenario.
+ * </p>
  */
 class InvocationProcessor implements MockInvocationHandler {
 
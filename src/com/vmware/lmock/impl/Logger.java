@@ -22,6 +22,56 @@ final class Logger {
     /** Class of the object using this logger. */
     private final Class<?> clazz;
 
+    /**
+     * Tells whether traces are written.
+     *
+     * <p>
+     * The hot paths check this before building the arguments of a trace
+     * (typically, when a trace has more arguments than the fixed-arity
+     * versions of <code>trace</code>).
+     * </p>
+     *
+     * @return <code>true</code> if an activity logger is installed.
+     */
+    boolean isTraceEnabled() {
+        return Trace.getActivityLogger() != null;
+    }
+
+    void trace(String methodName) {
+        ActivityLogger activityLogger = Trace.getActivityLogger();
+        if (activityLogger != null) {
+            writeIfNeeded(activityLogger, clazz, methodName);
+        }
+    }
+
+    void trace(String methodName, Object data1) {
+        ActivityLogger activityLogger = Trace.getActivityLogger();
+        if (activityLogger != null) {
+            writeIfNeeded(activityLogger, clazz, methodName, data1);
+        }
+    }
+
+    void trace(String methodName, Object data1, Object data2) {
+        ActivityLogger activityLogger = Trace.getActivityLogger();
+        if (activityLogger != null) {
+            writeIfNeeded(activityLogger, clazz, methodName, data1, data2);
+        }
+    }
+
+    void trace(String methodName, Object data1, Object data2, Object data3) {
+        ActivityLogger activityLogger = Trace.getActivityLogger();
+        if (activityLogger != null) {
+            writeIfNeeded(activityLogger, clazz, methodName, data1, data2, data3);
+        }
+    }
+
+    void trace(String methodName, Object data1, Object data2, Object data3, Object data4) {
+        ActivityLogger activityLogger = Trace.getActivityLogger();
+        if (activityLogger != null) {
+            writeIfNeeded(activityLogger, clazz, methodName, data1, data2, data3, data4);
+        }
+    }
+
     void trace(String methodName, Object... data) {
         writeIfNeeded(Trace.getActivityLogger(), clazz, methodName, data);
     }
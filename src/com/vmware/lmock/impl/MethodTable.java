@@ -0,0 +1,340 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.impl;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns a dense ordinal to each method that can be invoked on the mocks of a
+ * given class, and holds the metadata shared by these mocks.
+ *
+ * <p>
+ * The ordinals range from 0 to <code>size() - 1</code>, so that the internal
+ * structures can store per-method data in plain arrays. There is one table per
+ * mocked class, built once and shared by all the mocks of that class
+ * (<code>get</code>).
+ * </p>
+ *
+ * <p>
+ * A proxy invokes its handler with the methods of the mocked interface, plus
+ * <code>equals</code>, <code>hashCode</code> and <code>toString</code> from
+ * <code>Object</code>. The table covers all of them. These three methods always
+ * get the same ordinals (<code>EQUALS</code>, <code>HASH_CODE</code> and
+ * <code>TO_STRING</code>), including when the mocked class redeclares them.
+ * </p>
+ *
+ * <p>
+ * Proxies always pass the same method objects. So once a method object has
+ * been resolved, it is remembered in an identity map, which spares the
+ * comparison of method signatures. As the other shared maps, this one is
+ * copy-on-write, so that it is read without lock.
+ * </p>
+ *
+ * <p>
+ * Creating the mocks, stubs and expectations of a class requires the same
+ * information again and again: the parameter types of the methods, their
+ * default results, checkers accepting any argument and the constructor of
+ * the mock objects. The table computes them once for all. The default results
+ * and checkers are immutable, so they are shared by all the users.
+ * </p>
+ */
+final class MethodTable {
+    /** The ordinal of <code>equals</code>. */
+    static final int EQUALS = 0;
+    /** The ordinal of <code>hashCode</code>. */
+    static final int HASH_CODE = 1;
+    /** The ordinal of <code>toString</code>. */
+    static final int TO_STRING = 2;
+    /** The number of methods inherited from <code>Object</code>. */
+    static final int NR_OBJECT_METHODS = 3;
+    /** The methods inherited from <code>Object</code>, by ordinal. */
+    private static final Method[] objectMethods = new Method[NR_OBJECT_METHODS];
+
+    static {
+        try {
+            objectMethods[EQUALS] = Object.class.getMethod("equals", Object.class);
+            objectMethods[HASH_CODE] = Object.class.getMethod("hashCode");
+            objectMethods[TO_STRING] = Object.class.getMethod("toString");
+        } catch (NoSuchMethodException e) {
+            // Object is not going to change its methods...
+            throw new IllegalStateException(e);
+        }
+    }
+    /** Handler of the proxies created to get the class of the proxies. */
+    private static final InvocationHandler unusedHandler = new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            throw new UnsupportedOperationException();
+        }
+    };
+    /** The known tables, per mocked class. */
+    private static volatile Map<Class<?>, MethodTable> tables =
+      new IdentityHashMap<Class<?>, MethodTable>();
+    /** The ordinal of each method, by signature. */
+    private final Map<Method, Integer> ordinals = new HashMap<Method, Integer>();
+    /** The method of each ordinal, as passed by the proxies. */
+    private final List<Method> methods = new ArrayList<Method>();
+    /** The ordinal of the method objects already resolved. */
+    private volatile Map<Method, Integer> knownMethods =
+      new IdentityHashMap<Method, Integer>();
+    /** The mocked class. */
+    private final Class<?> clazz;
+    /** The parameter types of each method, by ordinal. */
+    private final Class<?>[][] parameterTypes;
+    /** The default result of each method, by ordinal. */
+    private final InvocationResult[] defaultResults;
+    /** The checkers accepting any argument of each method, by ordinal. */
+    private final ClassChecker[][] anyArgumentCheckers;
+    /** The constructor of the proxies, <code>null</code> if unavailable. */
+    private Constructor<?> proxyConstructor;
+    /** Asserted once the constructor of the proxies is resolved. */
+    private volatile boolean proxyConstructorIsResolved = false;
+    /** The constructor of the generated class, <code>null</code> if unavailable. */
+    private Constructor<?> generatedConstructor;
+    /** Asserted once the generated class is resolved. */
+    private volatile boolean generatedConstructorIsResolved = false;
+
+    /**
+     * Adds a method to the table, if not already there.
+     *
+     * @param method
+     *            the new method
+     */
+    private void addMethod(Method method) {
+        if (!ordinals.containsKey(method)) {
+            ordinals.put(method, methods.size());
+            methods.add(method);
+        }
+    }
+
+    /**
+     * Gets the ordinal of a method inherited from <code>Object</code>.
+     *
+     * @param method
+     *            the method
+     * @return The ordinal, -1 if the method does not redeclare a method of
+     *         <code>Object</code>.
+     */
+    private static int getObjectMethodOrdinal(Method method) {
+        for (int ordinal = 0; ordinal < NR_OBJECT_METHODS; ordinal++) {
+            Method objectMethod = objectMethods[ordinal];
+            if (objectMethod.getName().equals(method.getName())
+              && objectMethod.getReturnType() == method.getReturnType()
+              && Arrays.equals(objectMethod.getParameterTypes(), method.getParameterTypes())) {
+                return ordinal;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates the table of a mocked class.
+     *
+     * @param clazz
+     *            the mocked class
+     */
+    private MethodTable(Class<?> clazz) {
+        this.clazz = clazz;
+        for (Method method : objectMethods) {
+            addMethod(method);
+        }
+
+        for (Method method : clazz.getMethods()) {
+            int ordinal = getObjectMethodOrdinal(method);
+            if (ordinal < 0) {
+                addMethod(method);
+            } else {
+                ordinals.put(method, ordinal);
+            }
+        }
+
+        int size = methods.size();
+        parameterTypes = new Class<?>[size][];
+        defaultResults = new InvocationResult[size];
+        anyArgumentCheckers = new ClassChecker[size][];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            Method method = methods.get(ordinal);
+            parameterTypes[ordinal] = method.getParameterTypes();
+            defaultResults[ordinal] = InvocationResult.getDefaultResultForClass(method.getReturnType());
+            anyArgumentCheckers[ordinal] = new ClassChecker[parameterTypes[ordinal].length];
+            for (int index = 0; index < parameterTypes[ordinal].length; index++) {
+                anyArgumentCheckers[ordinal][index] =
+                  ClassChecker.anyArgumentOf(parameterTypes[ordinal][index]);
+            }
+        }
+    }
+
+    /**
+     * Gets the table of a mocked class, creating it if needed.
+     *
+     * @param clazz
+     *            the mocked class
+     * @return The method table of the class.
+     */
+    static MethodTable get(Class<?> clazz) {
+        MethodTable table = tables.get(clazz);
+        if (table == null) {
+            synchronized (MethodTable.class) {
+                table = tables.get(clazz);
+                if (table == null) {
+                    table = new MethodTable(clazz);
+                    Map<Class<?>, MethodTable> newTables =
+                      new IdentityHashMap<Class<?>, MethodTable>(tables);
+                    newTables.put(clazz, table);
+                    tables = newTables;
+                }
+            }
+        }
+
+        return table;
+    }
+
+    /** @return The number of methods in this table. */
+    int size() {
+        return methods.size();
+    }
+
+    /**
+     * Gets the method of an ordinal.
+     *
+     * <p>
+     * When several methods share the same ordinal, the method returned is the
+     * first one registered, i.e. the one of <code>Object</code> if the
+     * method is inherited from <code>Object</code>.
+     * </p>
+     *
+     * @param ordinal
+     *            the method ordinal, between 0 and <code>size() - 1</code>
+     * @return The method.
+     */
+    Method getMethod(int ordinal) {
+        return methods.get(ordinal);
+    }
+
+    /**
+     * Gets the ordinal of a method.
+     *
+     * @param method
+     *            the requested method
+     * @return The ordinal, -1 if the method does not belong to this table.
+     */
+    int ordinalOf(Method method) {
+        Integer ordinal = knownMethods.get(method);
+        if (ordinal != null) {
+            return ordinal;
+        }
+
+        ordinal = ordinals.get(method);
+        if (ordinal == null) {
+            return -1;
+        }
+
+        synchronized (this) {
+            Map<Method, Integer> newKnownMethods =
+              new IdentityHashMap<Method, Integer>(knownMethods);
+            newKnownMethods.put(method, ordinal);
+            knownMethods = newKnownMethods;
+        }
+        return ordinal;
+    }
+
+    /**
+     * Gets the parameter types of a method.
+     *
+     * @param ordinal
+     *            the method ordinal, between 0 and <code>size() - 1</code>
+     * @return The parameter types, shared: the array must not be modified.
+     */
+    Class<?>[] getParameterTypes(int ordinal) {
+        return parameterTypes[ordinal];
+    }
+
+    /**
+     * Gets the default result of a method.
+     *
+     * @param ordinal
+     *            the method ordinal, between 0 and <code>size() - 1</code>
+     * @return The result returning the default value of the returned type.
+     */
+    InvocationResult getDefaultResult(int ordinal) {
+        return defaultResults[ordinal];
+    }
+
+    /**
+     * Gets the checker accepting any value of an argument of a method.
+     *
+     * @param ordinal
+     *            the method ordinal, between 0 and <code>size() - 1</code>
+     * @param index
+     *            the argument position
+     * @return The checker.
+     */
+    ClassChecker getAnyArgumentChecker(int ordinal, int index) {
+        return anyArgumentCheckers[ordinal][index];
+    }
+
+    /**
+     * Gets the constructor of the proxies of the mocked class.
+     *
+     * @return The constructor, taking the invocation handler as argument,
+     *         <code>null</code> if the proxies must be created by
+     *         <code>Proxy.newProxyInstance</code>.
+     */
+    Constructor<?> getProxyConstructor() {
+        if (!proxyConstructorIsResolved) {
+            synchronized (this) {
+                if (!proxyConstructorIsResolved) {
+                    try {
+                        // The class of a first proxy is the class of all the
+                        // proxies of the mocked class.
+                        Class<?> proxyClass = Proxy.newProxyInstance(clazz.getClassLoader(),
+                          new Class<?>[]{clazz}, unusedHandler).getClass();
+                        proxyConstructor = proxyClass.getConstructor(InvocationHandler.class);
+                        if (!Modifier.isPublic(proxyClass.getModifiers())) {
+                            proxyConstructor.setAccessible(true);
+                        }
+                    } catch (Exception e) {
+                        // Including the classes which cannot be proxied:
+                        // Proxy.newProxyInstance will report the error.
+                        proxyConstructor = null;
+                    }
+                    proxyConstructorIsResolved = true;
+                }
+            }
+        }
+        return proxyConstructor;
+    }
+
+    /**
+     * Gets the constructor of the class generated for the mocks of the mocked
+     * class, generating it if needed.
+     *
+     * @return The constructor, taking the mock as argument, <code>null</code>
+     *         if the class cannot be generated.
+     */
+    Constructor<?> getGeneratedConstructor() {
+        if (!generatedConstructorIsResolved) {
+            synchronized (this) {
+                if (!generatedConstructorIsResolved) {
+                    generatedConstructor = MockClassGenerator.generate(clazz, this);
+                    generatedConstructorIsResolved = true;
+                }
+            }
+        }
+        return generatedConstructor;
+    }
+}
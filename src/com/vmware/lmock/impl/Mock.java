@@ -7,12 +7,14 @@
  * ************************************************************************** */
 package com.vmware.lmock.impl;
 
-import static com.vmware.lmock.impl.MockInvocationHandlerType.CHECKER;
 import static com.vmware.lmock.impl.MockInvocationHandlerType.CONSTRUCTOR;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.vmware.lmock.exception.LMRuntimeException;
 import com.vmware.lmock.exception.MockCreationException;
@@ -30,21 +32,33 @@ public class Mock implements InvocationHandler {
 
     /** Logs the mock activity. */
     private static final Logger logger = Logger.get(Mock.class);
+    /** Invocation hooks providing default methods when the mock has no handler. */
+    private static final InvocationHooks defaultHooks = InvocationHooks.get();
+    /** Asserted if the methods of <code>Object</code> bypass the handlers. */
+    private static volatile boolean objectMethodsAreAnsweredDirectly = false;
+    /** Asserted if the mocks are instances of generated classes. */
+    private static volatile boolean mockClassesAreGenerated = false;
     /** Mock counter, used to assign unique identifiers. */
-    private static long uidCount = 0L;
+    private static final AtomicLong uidCount = new AtomicLong();
     /** Unique identifier of this. */
     private final long uid;
     /** The mocked class. */
     private final Class<?> clazz;
+    /** The ordinals of the methods of the mocked class. */
+    private final MethodTable methodTable;
     /** The proxy object. */
     private final Object proxy;
     /** The current invocation handlers associated to the mock. One per type. */
     private final MockInvocationHandler[] handlers =
       new MockInvocationHandler[MockInvocationHandlerType.values().length];
-    /** Invocation hooks providing default methods when the mock has no handler. */
-    private final InvocationHooks defaultHooks = new InvocationHooks();
     /** Name of this mock. */
     private final String name;
+    /** The handler linked to this mock by the running stories, if known. */
+    private volatile MockLinker.Link link;
+    /** The default result of <code>hashCode</code>, built on first use. */
+    private InvocationResult hashCodeResult;
+    /** The default result of <code>toString</code>, built on first use. */
+    private InvocationResult toStringResult;
 
     /**
      * Generates a new object mocking a user supplied class.
@@ -83,12 +97,130 @@ public class Mock implements InvocationHandler {
         logger.trace("getObject", null, "name =", name, "class =", clazz);
 
         try {
-            return (T) new Mock(name, clazz).getProxy();
+            return (T) new Mock(name, clazz, MethodTable.get(clazz), uidCount.getAndIncrement()).getProxy();
+        } catch (Exception e) {
+            throw new MockCreationException(e);
+        }
+    }
+
+    /**
+     * Generates several objects mocking a user supplied class.
+     *
+     * <p>
+     * This is equivalent to invoking <code>getObject</code> once per mock,
+     * except that the mocked class is described once for all and the unique
+     * identifiers of the mocks are allocated in a single block.
+     * </p>
+     *
+     * @param <T>
+     *            the type of mock objects
+     * @param clazz
+     *            class defining the type of mock objects
+     * @param count
+     *            the number of requested mocks
+     * @return The proxy objects.
+     * @throws MockCreationException
+     *             The mock objects cannot be created.
+     */
+    public static <T> T[] getObjects(Class<T> clazz, int count) throws MockCreationException {
+        return getObjects(null, clazz, count);
+    }
+
+    /**
+     * Generates several objects mocking a user supplied class.
+     *
+     * <p>
+     * The mocks are named after a prefix, followed by their position in the
+     * returned array (e.g. <code>device0</code>, <code>device1</code>...).
+     * </p>
+     *
+     * @param <T>
+     *            the type of mock objects
+     * @param prefix
+     *            the prefix of the mock names, <code>null</code> to let the
+     *            names be automatically assigned
+     * @param clazz
+     *            class defining the type of mock objects
+     * @param count
+     *            the number of requested mocks
+     * @return The proxy objects.
+     * @throws MockCreationException
+     *             The mock objects cannot be created.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T[] getObjects(String prefix, Class<T> clazz, int count)
+      throws MockCreationException {
+        logger.trace("getObjects", null, "prefix =", prefix, "class =", clazz, "count =", count);
+
+        try {
+            T[] objects = (T[]) Array.newInstance(clazz, count);
+            MethodTable methodTable = MethodTable.get(clazz);
+            long firstUid = uidCount.getAndAdd(count);
+            for (int index = 0; index < count; index++) {
+                String name = (prefix == null) ? null : prefix + index;
+                objects[index] = (T) new Mock(name, clazz, methodTable, firstUid + index).getProxy();
+            }
+            return objects;
         } catch (Exception e) {
             throw new MockCreationException(e);
         }
     }
 
+    /**
+     * Specifies whether the invocations of <code>equals</code>,
+     * <code>hashCode</code> and <code>toString</code> are answered directly
+     * by the default implementations.
+     *
+     * <p>
+     * By default, these invocations are submitted to the ongoing stories as
+     * any other invocation, which fall back to the default implementations if
+     * they are not expected. This requires to lock the stories and check
+     * their stubs and expectations, which becomes expensive when the mocks are
+     * massively stored in hash maps or sets.
+     * </p>
+     *
+     * <p>
+     * When enabled, the mocks answer these invocations directly, unless the
+     * invoked method of the mock is explicitly expected or stubbed by the
+     * story running with this mock.
+     * </p>
+     *
+     * @param enable
+     *            <code>true</code> to answer the invocations directly
+     */
+    public static void answerObjectMethodsDirectly(boolean enable) {
+        logger.trace("answerObjectMethodsDirectly", null, "enable=", enable);
+        objectMethodsAreAnsweredDirectly = enable;
+    }
+
+    /**
+     * Specifies whether the mock objects are instances of classes generated
+     * at runtime rather than proxies.
+     *
+     * <p>
+     * A generated class directly implements the methods of the mocked
+     * interface, each of them forwarding the invocations with the ordinal of
+     * the method. This saves the resolution of the invoked method, and the
+     * virtual machine can optimize the calls better than with the single
+     * invocation handler of the proxies.
+     * </p>
+     *
+     * <p>
+     * The classes can only be generated for public interfaces which methods
+     * only refer to public types, and if the virtual machine supports it.
+     * Otherwise, the mocks remain proxies. This does not change the behavior
+     * of the mocks, except for the class of the mock objects.
+     * </p>
+     *
+     * @param enable
+     *            <code>true</code> to create the next mocks with generated
+     *            classes
+     */
+    public static void generateMockClasses(boolean enable) {
+        logger.trace("generateMockClasses", null, "enable=", enable);
+        mockClassesAreGenerated = enable;
+    }
+
     /**
      * Gets the proxy object that THEORETICALLY wraps a mock object.
      *
@@ -103,17 +235,11 @@ public class Mock implements InvocationHandler {
     protected static <T> Mock getProxyOrThrow(T object) throws MockReferenceException {
         logger.trace("getProxyOrThrow", null, "object=", object);
 
-        try {
-            // Check that we have an invocation handler and that it's a proxy.
-            InvocationHandler handler = Proxy.getInvocationHandler(object);
-            if (handler instanceof Mock) {
-                return (Mock) handler;
-            } else {
-                throw new MockReferenceException(
-                  "referencing a non-mock object");
-            }
-        } catch (Exception e) {
-            throw new MockReferenceException("referencing a non-mock object", e);
+        Mock mock = MockRegistry.getMock(object);
+        if (mock == null) {
+            throw new MockReferenceException("referencing a non-mock object");
+        } else {
+            return mock;
         }
     }
 
@@ -125,21 +251,8 @@ public class Mock implements InvocationHandler {
      * @return The object, or the mock.
      */
     protected static Object getObjectOrMock(Object object) {
-        if (object == null) {
-            return object;
-        }
-
-        try {
-            // Check that we have an invocation handler and that it's a proxy.
-            InvocationHandler handler = Proxy.getInvocationHandler(object);
-            if (handler instanceof Mock) {
-                return handler;
-            } else {
-                return object;
-            }
-        } catch (Exception e) {
-            return object;
-        }
+        Mock mock = MockRegistry.getMock(object);
+        return (mock == null) ? object : mock;
     }
 
     /**
@@ -157,15 +270,53 @@ public class Mock implements InvocationHandler {
      *            automatically assigned
      * @param clazz
      *            type of the mock object
+     * @param methodTable
+     *            the method table of the mocked class
+     * @param uid
+     *            the unique identifier of the mock
      */
-    private Mock(String name, Class<?> clazz) {
-        uid = uidCount++;
+    private Mock(String name, Class<?> clazz, MethodTable methodTable, long uid) {
+        this.uid = uid;
         this.clazz = clazz;
+        this.methodTable = methodTable;
         this.name = (name == null) ? defaultMockName() : name;
-        proxy = Proxy.newProxyInstance(clazz.getClassLoader(),
-          new Class<?>[]{clazz}, this);
+        proxy = newProxy();
+        MockRegistry.registerProxyClass(proxy.getClass());
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("Mock", name, "new mock: uid=", uid, "class=", clazz, "proxy=", proxy);
+        }
+    }
 
-        logger.trace("Mock", name, "new mock: uid=", uid, "class=", clazz, "proxy=", proxy);
+    /**
+     * Creates the object that wraps this mock.
+     *
+     * @return An instance of the generated mock class if requested and
+     *         possible, a proxy otherwise.
+     */
+    private Object newProxy() {
+        if (mockClassesAreGenerated) {
+            Constructor<?> constructor = methodTable.getGeneratedConstructor();
+            if (constructor != null) {
+                try {
+                    return constructor.newInstance(this);
+                } catch (Exception e) {
+                    logger.trace("newProxy", name, "could not instantiate generated class:", e);
+                }
+            }
+        }
+
+        // The constructor of the proxy class is resolved once for all the
+        // mocks of the class, which saves the lookups of newProxyInstance.
+        Constructor<?> constructor = methodTable.getProxyConstructor();
+        if (constructor != null) {
+            try {
+                return constructor.newInstance(this);
+            } catch (Exception e) {
+                logger.trace("newProxy", name, "could not instantiate proxy class:", e);
+            }
+        }
+        return Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[]{clazz}, this);
     }
 
     /** @return The unique identifier of this object. */
@@ -183,6 +334,50 @@ public class Mock implements InvocationHandler {
         return clazz;
     }
 
+    /** @return The ordinals of the methods of the mocked class. */
+    protected MethodTable getMethodTable() {
+        return methodTable;
+    }
+
+    /**
+     * Tells whether an invocation is answered directly, without going through
+     * the invocation handlers (see <code>answerObjectMethodsDirectly</code>).
+     *
+     * @param invocation
+     *            the invocation
+     * @return <code>true</code> if the invocation bypasses the handlers.
+     */
+    private boolean isAnsweredDirectly(Invocation invocation) {
+        int ordinal = invocation.getMethodOrdinal();
+        // The constructor must see every invocation, to define the
+        // expectations and stubs on these methods.
+        return objectMethodsAreAnsweredDirectly
+          && ordinal >= 0 && ordinal < MethodTable.NR_OBJECT_METHODS
+          && handlers[CONSTRUCTOR.ordinal()] == null
+          && !MockLinker.isRedefined(this, ordinal);
+    }
+
+    /** @return The result of the default <code>hashCode</code> of this mock. */
+    protected InvocationResult getHashCodeResult() {
+        // Races are harmless: every thread builds the same result.
+        InvocationResult result = hashCodeResult;
+        if (result == null) {
+            result = InvocationResult.returnValue(hashCode());
+            hashCodeResult = result;
+        }
+        return result;
+    }
+
+    /** @return The result of the default <code>toString</code> of this mock. */
+    protected InvocationResult getToStringResult() {
+        InvocationResult result = toStringResult;
+        if (result == null) {
+            result = InvocationResult.returnValue(toString());
+            toStringResult = result;
+        }
+        return result;
+    }
+
     /**
      * Assigns an invocation handler, called when a method of the mock object is
      * invoked.
@@ -198,7 +393,9 @@ public class Mock implements InvocationHandler {
      */
     protected void setInvocationHandler(MockInvocationHandlerType type,
       MockInvocationHandler handler) {
-        logger.trace("setInvocationHandler", name, "type=", type, " handler=", handler);
+        if (logger.isTraceEnabled()) {
+            logger.trace("setInvocationHandler", name, "type=", type, " handler=", handler);
+        }
 
         int index = type.ordinal();
         if (type == CONSTRUCTOR && handlers[index] != null) {
@@ -231,11 +428,28 @@ public class Mock implements InvocationHandler {
         }
     }
 
+    /** @return The handler linked to this mock, <code>null</code> if not known yet. */
+    MockLinker.Link getLink() {
+        return link;
+    }
+
+    /**
+     * Remembers the handler linked to this mock.
+     *
+     * @param link
+     *            the link
+     */
+    void setLink(MockLinker.Link link) {
+        this.link = link;
+    }
+
     /**
      * Selects an invocation handler if any.
      *
      * <p>
-     * Puts the priority on the constructor.
+     * Puts the priority on the constructor. Otherwise, the checker is the
+     * handler linked to the mock by the running stories (see
+     * <code>MockLinker</code>).
      * </p>
      *
      * @return The fetched handler, null if none.
@@ -245,8 +459,8 @@ public class Mock implements InvocationHandler {
             logger.trace("selectInvocationHandler", name, "select CONSTRUCTOR");
             return handlers[CONSTRUCTOR.ordinal()];
         } else {
-            logger.trace("selectInvocationHandler", name, "select CHECKER");
-            return handlers[CHECKER.ordinal()];
+            logger.trace("selectInvocationHandler", name, "select linked checker");
+            return MockLinker.getLinkedHandler(this);
         }
     }
 
@@ -268,26 +482,79 @@ public class Mock implements InvocationHandler {
             // control flow. Which means that the exception may be guarded.
             UnexpectedInvocationError error =
               new UnexpectedInvocationError(invocation.toString());
-            ExceptionGuard.get().record(error);
+            StoryContext.current().getExceptionGuard().record(error);
             throw error;
         } else {
-            logger.trace("tryDefaultInvocation", name, "invocation=", invocation, "returns", result);
+            if (logger.isTraceEnabled()) {
+                logger.trace("tryDefaultInvocation", name, "invocation=", invocation, "returns", result);
+            }
             return result;
         }
     }
 
     @Override
     public Object invoke(Object arg0, Method arg1, Object[] arg2) throws Throwable {
-        logger.trace("invoke", name, "arg0=", arg0, "arg1=", arg1, "arg2=", arg2);
-        Invocation invocation = new Invocation(this, arg0, arg1, arg2);
-        MockInvocationHandler handler = selectInvocationHandler();
-        if (handler != null) {
-            logger.trace("invoke", name, "invocation handler found");
-            return handler.invoke(invocation).apply();
-        } else {
-            logger.trace("invoke", name, "no invocation handler found, trying default");
-            return tryDefaultInvocation(invocation).apply();
+        return invoke(arg0, arg1, methodTable.ordinalOf(arg1), arg2);
+    }
+
+    /**
+     * Processes an invocation of a generated mock object.
+     *
+     * @param object
+     *            the invoked object
+     * @param ordinal
+     *            the ordinal of the invoked method
+     * @param args
+     *            the arguments of the invocation, <code>null</code> if none
+     * @return The result of the invocation.
+     * @throws Throwable
+     *             The exception thrown by the invocation.
+     */
+    Object invoke(Object object, int ordinal, Object[] args) throws Throwable {
+        return invoke(object, methodTable.getMethod(ordinal), ordinal, args);
+    }
+
+    /**
+     * Processes an invocation.
+     *
+     * @param arg0
+     *            the invoked object
+     * @param arg1
+     *            the invoked method
+     * @param ordinal
+     *            the ordinal of the invoked method
+     * @param arg2
+     *            the arguments of the invocation, <code>null</code> if none
+     * @return The result of the invocation.
+     * @throws Throwable
+     *             The exception thrown by the invocation.
+     */
+    private Object invoke(Object arg0, Method arg1, int ordinal, Object[] arg2) throws Throwable {
+        // Avoid to build the (long) trace arguments if no one cares.
+        if (logger.isTraceEnabled()) {
+            logger.trace("invoke", name, "arg0=", arg0, "arg1=", arg1, "arg2=", arg2);
         }
+        Invocation invocation = Invocation.acquire(this, arg0, arg1, ordinal, arg2);
+        InvocationResultProvider result;
+        try {
+            if (isAnsweredDirectly(invocation)) {
+                logger.trace("invoke", name, "answering directly");
+                result = defaultHooks.tryInvocation(invocation);
+            } else {
+                MockInvocationHandler handler = selectInvocationHandler();
+                if (handler != null) {
+                    logger.trace("invoke", name, "invocation handler found");
+                    result = handler.invoke(invocation);
+                } else {
+                    logger.trace("invoke", name, "no invocation handler found, trying default");
+                    result = tryDefaultInvocation(invocation);
+                }
+            }
+        } finally {
+            invocation.release();
+        }
+
+        return result.apply();
     }
 
     @Override
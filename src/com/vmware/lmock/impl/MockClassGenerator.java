@@ -0,0 +1,654 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the classes of mock objects at runtime.
+ *
+ * <p>
+ * The generated class of an interface extends <code>GeneratedMock</code> and
+ * implements each method of the interface, plus <code>equals</code>,
+ * <code>hashCode</code> and <code>toString</code>. A method boxes its
+ * arguments into an array, calls <code>dispatch</code> with its ordinal in
+ * the method table of the interface, and unboxes the result if the returned
+ * type is primitive. This is what a proxy does, without the resolution of the
+ * invoked method.
+ * </p>
+ *
+ * <p>
+ * The classes are written in the Java 5 class file format, which does not
+ * require stack map frames, and defined by a dedicated class loader per
+ * interface. The interfaces which do not fit (non public types, conflicting
+ * methods...) or a virtual machine refusing to define the classes simply get
+ * no generated class: the mocks are proxies in that case.
+ * </p>
+ *
+ * <p>
+ * The constructors of the generated classes are kept by the method tables of
+ * the interfaces, which generate each class once.
+ * </p>
+ */
+final class MockClassGenerator {
+    /** Logs the generator activity. */
+    private static final Logger logger = Logger.get(MockClassGenerator.class);
+    /** Package of the generated classes. */
+    private static final String GENERATED_PACKAGE = "com.vmware.lmock.generated.";
+    /** Internal name of the base class of the generated classes. */
+    private static final String BASE_CLASS = internalNameOf(GeneratedMock.class);
+    /** Version of the generated class files (Java 5). */
+    private static final int CLASS_FILE_VERSION = 49;
+    /** Maximum operand stack depth of a generated method. */
+    private static final int MAX_STACK = 8;
+    // Access flags.
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    // Constant pool tags.
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    // Opcodes.
+    private static final int ACONST_NULL = 0x01;
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int LLOAD = 0x16;
+    private static final int FLOAD = 0x17;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD = 0x19;
+    private static final int AASTORE = 0x53;
+    private static final int POP = 0x57;
+    private static final int DUP = 0x59;
+    private static final int IRETURN = 0xac;
+    private static final int LRETURN = 0xad;
+    private static final int FRETURN = 0xae;
+    private static final int DRETURN = 0xaf;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int ANEWARRAY = 0xbd;
+    private static final int CHECKCAST = 0xc0;
+    /** The wrapper classes of the primitive types. */
+    private static final Map<Class<?>, Class<?>> wrappers = new HashMap<Class<?>, Class<?>>();
+
+    static {
+        wrappers.put(boolean.class, Boolean.class);
+        wrappers.put(byte.class, Byte.class);
+        wrappers.put(char.class, Character.class);
+        wrappers.put(short.class, Short.class);
+        wrappers.put(int.class, Integer.class);
+        wrappers.put(long.class, Long.class);
+        wrappers.put(float.class, Float.class);
+        wrappers.put(double.class, Double.class);
+    }
+    /** Counter used to name the generated classes. */
+    private static final AtomicInteger classCount = new AtomicInteger();
+
+    /**
+     * The class loader of the generated classes.
+     *
+     * <p>
+     * The mocked types are resolved by the class loader of the interface,
+     * while the base class of the mocks always is the one of this library.
+     * </p>
+     */
+    private static final class MockClassLoader extends ClassLoader {
+        /**
+         * Creates a new class loader.
+         *
+         * @param parent
+         *            the class loader of the mocked interface
+         */
+        MockClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve)
+          throws ClassNotFoundException {
+            if (name.equals(GeneratedMock.class.getName())) {
+                return GeneratedMock.class;
+            } else if (name.equals(Mock.class.getName())) {
+                return Mock.class;
+            } else {
+                return super.loadClass(name, resolve);
+            }
+        }
+
+        /**
+         * Defines a generated class.
+         *
+         * @param name
+         *            the class name
+         * @param bytes
+         *            the class file
+         * @return The defined class.
+         */
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * The constant pool of a class file being written.
+     */
+    private static final class ConstantPool {
+        /** The index of each constant, by key. */
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        /** The written constants. */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        /** The output of the constants. */
+        private final DataOutputStream output = new DataOutputStream(bytes);
+        /** The index of the next constant. */
+        private int nextIndex = 1;
+
+        /**
+         * Gets the index of a constant, if already written.
+         *
+         * @param key
+         *            the key of the constant
+         * @return The index, null if the constant is new.
+         */
+        private Integer lookup(String key) {
+            return indexes.get(key);
+        }
+
+        /**
+         * Registers a new constant.
+         *
+         * @param key
+         *            the key of the constant
+         * @return The index of the constant.
+         */
+        private int register(String key) {
+            int index = nextIndex++;
+            indexes.put(key, index);
+            return index;
+        }
+
+        int utf8(String value) throws IOException {
+            String key = "U" + value;
+            Integer index = lookup(key);
+            if (index == null) {
+                output.writeByte(CONSTANT_UTF8);
+                output.writeUTF(value);
+                index = register(key);
+            }
+            return index;
+        }
+
+        int integer(int value) throws IOException {
+            String key = "I" + value;
+            Integer index = lookup(key);
+            if (index == null) {
+                output.writeByte(CONSTANT_INTEGER);
+                output.writeInt(value);
+                index = register(key);
+            }
+            return index;
+        }
+
+        int classRef(String internalName) throws IOException {
+            String key = "C" + internalName;
+            Integer index = lookup(key);
+            if (index == null) {
+                int nameIndex = utf8(internalName);
+                output.writeByte(CONSTANT_CLASS);
+                output.writeShort(nameIndex);
+                index = register(key);
+            }
+            return index;
+        }
+
+        int methodRef(String owner, String name, String descriptor) throws IOException {
+            String key = "M" + owner + "." + name + descriptor;
+            Integer index = lookup(key);
+            if (index == null) {
+                int classIndex = classRef(owner);
+                int nameIndex = utf8(name);
+                int descriptorIndex = utf8(descriptor);
+                output.writeByte(CONSTANT_NAME_AND_TYPE);
+                output.writeShort(nameIndex);
+                output.writeShort(descriptorIndex);
+                int nameAndTypeIndex = nextIndex++;
+                output.writeByte(CONSTANT_METHODREF);
+                output.writeShort(classIndex);
+                output.writeShort(nameAndTypeIndex);
+                index = register(key);
+            }
+            return index;
+        }
+
+        /**
+         * Writes the constant pool into a class file.
+         *
+         * @param classFile
+         *            the class file
+         * @throws IOException
+         *             Not expected, the class file is in memory.
+         */
+        void writeTo(DataOutputStream classFile) throws IOException {
+            classFile.writeShort(nextIndex);
+            output.flush();
+            bytes.writeTo(classFile);
+        }
+    }
+
+    /** This class only provides static methods. */
+    private MockClassGenerator() {
+    }
+
+    /**
+     * Gets the internal name of a class, as used by class files.
+     *
+     * @param clazz
+     *            the class
+     * @return The internal name.
+     */
+    private static String internalNameOf(Class<?> clazz) {
+        return clazz.getName().replace('.', '/');
+    }
+
+    /**
+     * Gets the descriptor of a type.
+     *
+     * @param clazz
+     *            the type
+     * @return The type descriptor.
+     */
+    private static String descriptorOf(Class<?> clazz) {
+        if (clazz == void.class) {
+            return "V";
+        } else if (clazz == boolean.class) {
+            return "Z";
+        } else if (clazz == byte.class) {
+            return "B";
+        } else if (clazz == char.class) {
+            return "C";
+        } else if (clazz == short.class) {
+            return "S";
+        } else if (clazz == int.class) {
+            return "I";
+        } else if (clazz == long.class) {
+            return "J";
+        } else if (clazz == float.class) {
+            return "F";
+        } else if (clazz == double.class) {
+            return "D";
+        } else if (clazz.isArray()) {
+            return internalNameOf(clazz);
+        } else {
+            return "L" + internalNameOf(clazz) + ";";
+        }
+    }
+
+    /**
+     * Gets the descriptor of the parameters of a method.
+     *
+     * @param method
+     *            the method
+     * @return The descriptor of the parameters, including the parentheses.
+     */
+    private static String parametersDescriptorOf(Method method) {
+        StringBuilder builder = new StringBuilder("(");
+        for (Class<?> type : method.getParameterTypes()) {
+            builder.append(descriptorOf(type));
+        }
+        return builder.append(')').toString();
+    }
+
+    /**
+     * Tells whether a type can be referenced by a generated class.
+     *
+     * @param clazz
+     *            the type
+     * @return <code>true</code> if the type is primitive or public.
+     */
+    private static boolean isAccessible(Class<?> clazz) {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        return clazz.isPrimitive() || Modifier.isPublic(clazz.getModifiers());
+    }
+
+    /**
+     * Selects the methods to implement for an interface.
+     *
+     * <p>
+     * As with proxies, when several methods share the same signature, the
+     * first one in the method table is invoked.
+     * </p>
+     *
+     * @param table
+     *            the method table of the interface
+     * @return The ordinals of the implemented methods, <code>null</code> if
+     *         the interface cannot be implemented.
+     */
+    private static List<Integer> selectMethods(MethodTable table) {
+        Map<String, Integer> selected = new LinkedHashMap<String, Integer>();
+        for (int ordinal = 0; ordinal < table.size(); ordinal++) {
+            Method method = table.getMethod(ordinal);
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+
+            if (!isAccessible(method.getReturnType())) {
+                return null;
+            }
+            for (Class<?> type : method.getParameterTypes()) {
+                if (!isAccessible(type)) {
+                    return null;
+                }
+            }
+
+            String signature = method.getName() + parametersDescriptorOf(method);
+            Integer previous = selected.get(signature);
+            if (previous == null) {
+                selected.put(signature, ordinal);
+            } else if (table.getMethod(previous).getReturnType() != method.getReturnType()) {
+                // Leave the covariant returned types to the proxies.
+                return null;
+            }
+        }
+
+        return new ArrayList<Integer>(selected.values());
+    }
+
+    /**
+     * Writes an instruction pushing an integer constant.
+     *
+     * @param code
+     *            the code of the method
+     * @param pool
+     *            the constant pool
+     * @param value
+     *            the pushed value
+     * @throws IOException
+     *             Not expected, the code is in memory.
+     */
+    private static void pushInt(DataOutputStream code, ConstantPool pool, int value)
+      throws IOException {
+        if (value >= -1 && value <= 5) {
+            code.writeByte(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.writeByte(BIPUSH);
+            code.writeByte(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.writeByte(SIPUSH);
+            code.writeShort(value);
+        } else {
+            code.writeByte(LDC_W);
+            code.writeShort(pool.integer(value));
+        }
+    }
+
+    /**
+     * Writes a method into a class file.
+     *
+     * @param classFile
+     *            the class file
+     * @param pool
+     *            the constant pool
+     * @param name
+     *            the method name
+     * @param descriptor
+     *            the method descriptor
+     * @param maxLocals
+     *            the number of local variable slots
+     * @param code
+     *            the code of the method
+     * @throws IOException
+     *             Not expected, the class file is in memory.
+     */
+    private static void writeMethod(DataOutputStream classFile, ConstantPool pool, String name,
+      String descriptor, int maxLocals, ByteArrayOutputStream code) throws IOException {
+        classFile.writeShort(ACC_PUBLIC);
+        classFile.writeShort(pool.utf8(name));
+        classFile.writeShort(pool.utf8(descriptor));
+        // A single attribute: the code.
+        classFile.writeShort(1);
+        classFile.writeShort(pool.utf8("Code"));
+        classFile.writeInt(12 + code.size());
+        classFile.writeShort(MAX_STACK);
+        classFile.writeShort(maxLocals);
+        classFile.writeInt(code.size());
+        code.writeTo(classFile);
+        // No exception table, no attribute.
+        classFile.writeShort(0);
+        classFile.writeShort(0);
+    }
+
+    /**
+     * Writes the constructor of a generated class, which simply passes the
+     * mock to the base class.
+     *
+     * @param classFile
+     *            the class file
+     * @param pool
+     *            the constant pool
+     * @throws IOException
+     *             Not expected, the class file is in memory.
+     */
+    private static void writeConstructor(DataOutputStream classFile, ConstantPool pool)
+      throws IOException {
+        String descriptor = "(" + descriptorOf(Mock.class) + ")V";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(bytes);
+        code.writeByte(ALOAD);
+        code.writeByte(0);
+        code.writeByte(ALOAD);
+        code.writeByte(1);
+        code.writeByte(INVOKESPECIAL);
+        code.writeShort(pool.methodRef(BASE_CLASS, "<init>", descriptor));
+        code.writeByte(RETURN);
+        code.flush();
+        writeMethod(classFile, pool, "<init>", descriptor, 2, bytes);
+    }
+
+    /**
+     * Writes the implementation of a method of the mocked interface.
+     *
+     * @param classFile
+     *            the class file
+     * @param pool
+     *            the constant pool
+     * @param method
+     *            the implemented method
+     * @param ordinal
+     *            the ordinal of the method
+     * @throws IOException
+     *             Not expected, the class file is in memory.
+     */
+    private static void writeMockMethod(DataOutputStream classFile, ConstantPool pool,
+      Method method, int ordinal) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(bytes);
+        Class<?>[] parameterTypes = method.getParameterTypes();
+
+        // this.dispatch(ordinal, arguments)
+        code.writeByte(ALOAD);
+        code.writeByte(0);
+        pushInt(code, pool, ordinal);
+        int slot = 1;
+        if (parameterTypes.length == 0) {
+            // Same as proxies: no array when there is no argument.
+            code.writeByte(ACONST_NULL);
+        } else {
+            pushInt(code, pool, parameterTypes.length);
+            code.writeByte(ANEWARRAY);
+            code.writeShort(pool.classRef("java/lang/Object"));
+            for (int index = 0; index < parameterTypes.length; index++) {
+                Class<?> type = parameterTypes[index];
+                code.writeByte(DUP);
+                pushInt(code, pool, index);
+                if (!type.isPrimitive()) {
+                    code.writeByte(ALOAD);
+                    code.writeByte(slot++);
+                } else {
+                    if (type == long.class) {
+                        code.writeByte(LLOAD);
+                    } else if (type == float.class) {
+                        code.writeByte(FLOAD);
+                    } else if (type == double.class) {
+                        code.writeByte(DLOAD);
+                    } else {
+                        code.writeByte(ILOAD);
+                    }
+                    code.writeByte(slot);
+                    slot += (type == long.class || type == double.class) ? 2 : 1;
+                    Class<?> wrapper = wrappers.get(type);
+                    code.writeByte(INVOKESTATIC);
+                    code.writeShort(pool.methodRef(internalNameOf(wrapper), "valueOf",
+                      "(" + descriptorOf(type) + ")" + descriptorOf(wrapper)));
+                }
+                code.writeByte(AASTORE);
+            }
+        }
+        code.writeByte(INVOKEVIRTUAL);
+        code.writeShort(pool.methodRef(BASE_CLASS, "dispatch", "(I[Ljava/lang/Object;)Ljava/lang/Object;"));
+
+        // Convert the result to the returned type.
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class) {
+            code.writeByte(POP);
+            code.writeByte(RETURN);
+        } else if (returnType.isPrimitive()) {
+            Class<?> wrapper = wrappers.get(returnType);
+            code.writeByte(CHECKCAST);
+            code.writeShort(pool.classRef(internalNameOf(wrapper)));
+            code.writeByte(INVOKEVIRTUAL);
+            code.writeShort(pool.methodRef(internalNameOf(wrapper), returnType.getName() + "Value",
+              "()" + descriptorOf(returnType)));
+            if (returnType == long.class) {
+                code.writeByte(LRETURN);
+            } else if (returnType == float.class) {
+                code.writeByte(FRETURN);
+            } else if (returnType == double.class) {
+                code.writeByte(DRETURN);
+            } else {
+                code.writeByte(IRETURN);
+            }
+        } else {
+            if (returnType != Object.class) {
+                code.writeByte(CHECKCAST);
+                code.writeShort(pool.classRef(internalNameOf(returnType)));
+            }
+            code.writeByte(ARETURN);
+        }
+        code.flush();
+
+        writeMethod(classFile, pool, method.getName(),
+          parametersDescriptorOf(method) + descriptorOf(returnType), slot, bytes);
+    }
+
+    /**
+     * Writes the class file of a generated class.
+     *
+     * @param className
+     *            the internal name of the generated class
+     * @param clazz
+     *            the mocked interface
+     * @param table
+     *            the method table of the interface
+     * @param ordinals
+     *            the ordinals of the implemented methods
+     * @return The class file.
+     * @throws IOException
+     *             Not expected, the class file is in memory.
+     */
+    private static byte[] writeClass(String className, Class<?> clazz, MethodTable table,
+      List<Integer> ordinals) throws IOException {
+        // The constant pool comes first in the class file, but is known once
+        // the rest of the class is written.
+        ConstantPool pool = new ConstantPool();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream classBody = new DataOutputStream(body);
+        classBody.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        classBody.writeShort(pool.classRef(className));
+        classBody.writeShort(pool.classRef(BASE_CLASS));
+        classBody.writeShort(1);
+        classBody.writeShort(pool.classRef(internalNameOf(clazz)));
+        // No field.
+        classBody.writeShort(0);
+        classBody.writeShort(1 + ordinals.size());
+        writeConstructor(classBody, pool);
+        for (int ordinal : ordinals) {
+            writeMockMethod(classBody, pool, table.getMethod(ordinal), ordinal);
+        }
+        // No attribute.
+        classBody.writeShort(0);
+        classBody.flush();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream classFile = new DataOutputStream(bytes);
+        classFile.writeInt(0xCAFEBABE);
+        classFile.writeShort(0);
+        classFile.writeShort(CLASS_FILE_VERSION);
+        pool.writeTo(classFile);
+        body.writeTo(classFile);
+        classFile.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Generates the mock class of an interface.
+     *
+     * @param clazz
+     *            the mocked interface
+     * @param table
+     *            the method table of the interface
+     * @return The constructor of the generated class, taking the mock as
+     *         argument, <code>null</code> if the class cannot be generated.
+     */
+    static Constructor<?> generate(Class<?> clazz, MethodTable table) {
+        if (!clazz.isInterface() || !Modifier.isPublic(clazz.getModifiers())) {
+            return null;
+        }
+
+        List<Integer> ordinals = selectMethods(table);
+        if (ordinals == null) {
+            return null;
+        }
+
+        String className = GENERATED_PACKAGE + clazz.getSimpleName() + "$Mock" + classCount.getAndIncrement();
+        try {
+            byte[] classFile = writeClass(className.replace('.', '/'), clazz, table, ordinals);
+            MockClassLoader loader = new MockClassLoader(clazz.getClassLoader());
+            // Initialize the class right away, so that a class refused by the
+            // verifier is detected now.
+            loader.define(className, classFile);
+            Class<?> mockClass = Class.forName(className, true, loader);
+            return mockClass.getConstructor(Mock.class);
+        } catch (Exception e) {
+            logger.trace("generate", "cannot generate class for", clazz, e);
+            return null;
+        } catch (LinkageError e) {
+            logger.trace("generate", "cannot generate class for", clazz, e);
+            return null;
+        }
+    }
+}
@@ -29,6 +29,14 @@ import java.util.Map;
  * It also handles the cases of failures, intercepting the exceptions to
  * properly process the error.
  * </p>
+ *
+ * <p>
+ * The dispatcher itself does not serialize the invocations: each story
+ * processor protects its own state, so that only the actors sharing a
+ * scenario contend with each other, while stub processors are looked up
+ * without any lock. The dispatcher monitor only protects the creation and
+ * update of the processors (new actors, updates of actors, appends).
+ * </p>
  */
 class MockInvocationDispatcher extends MTDispatcher<MockInvocationDispatcher.Item>
   implements MockInvocationHandler, ActorUpdateListener {
@@ -45,7 +53,8 @@ class MockInvocationDispatcher extends MTDispatcher<MockInvocationDispatcher.Ite
      */
     static final class Item {
         private Actor actor;
-        private InvocationProcessor processor;
+        /** Read without lock by the invoking threads. */
+        private volatile InvocationProcessor processor;
 
         /**
          * Creates a new item.
@@ -107,6 +116,8 @@ class MockInvocationDispatcher extends MTDispatcher<MockInvocationDispatcher.Ite
       new ArrayList<StoryProcessor>();
     /** Associates the mocks to this invocation handler. */
     private final MockLinker linker = new MockLinker(this);
+    /** The runtime state of the story handled by this dispatcher. */
+    private final StoryContext context = new StoryContext(linker);
 
     /**
      * Computes the signature of a set of stubs, used to access the stub
@@ -180,7 +191,7 @@ class MockInvocationDispatcher extends MTDispatcher<MockInvocationDispatcher.Ite
      */
     private StoryProcessor createStoryProcessor(Scenario scenario) {
         logger.trace("createStoryProcessor", "scenario=", scenario);
-        StoryProcessor result = new StoryProcessor(new ExpectationList(scenario.createExpectations()));
+        StoryProcessor result = new StoryProcessor(context, new ExpectationList(scenario.createExpectations()));
         storyProcessorMap.put(scenario, result);
         storyProcessors.add(result);
 
@@ -233,11 +244,12 @@ class MockInvocationDispatcher extends MTDispatcher<MockInvocationDispatcher.Ite
     }
 
     @Override
-    public void onUpdateOfScenarioOrStubs(Actor actor, Object userArgument) {
+    public synchronized void onUpdateOfScenarioOrStubs(Actor actor, Object userArgument) {
         Item item = (Item) userArgument;
         logger.trace("onUpdate", "actor=", actor, "userArgument=", item);
         InvocationProcessor processor = createInvocationProcessor(actor);
         item.setProcessor(processor);
+        invalidateBindings();
     }
 
     /**
@@ -311,7 +323,7 @@ class MockInvocationDispatcher extends MTDispatcher<MockInvocationDispatcher.Ite
      */
     private void handleException(Actor actor, LMRuntimeException excpt) {
         logger.trace("handleException", "actor=", actor);
-        ExceptionGuard.get().record(excpt);
+        context.getExceptionGuard().record(excpt);
         actor.setLastException(excpt);
     }
 
@@ -329,7 +341,7 @@ class MockInvocationDispatcher extends MTDispatcher<MockInvocationDispatcher.Ite
      */
     private void handleError(Actor actor, ExpectationError error) {
         logger.trace("handleError", "actor=", actor);
-        ExceptionGuard.get().record(error);
+        context.getExceptionGuard().record(error);
         actor.setLastException(error);
     }
 
@@ -355,7 +367,7 @@ class MockInvocationDispatcher extends MTDispatcher<MockInvocationDispatcher.Ite
         }
     }
 
-    public synchronized InvocationResultProvider invoke(Invocation invocation) {
+    public InvocationResultProvider invoke(Invocation invocation) {
         return invokeProcessor(invocation, getCurrentData());
     }
 
@@ -400,7 +412,10 @@ class MockInvocationDispatcher extends MTDispatcher<MockInvocationDispatcher.Ite
      */
     synchronized void begin() {
         logger.trace("begin", "preparing for a new story...");
-        ExceptionGuard.get().enable();
+        context.attach();
+        // The story track is outdated.
+        context.getStoryTrack().clearTrackers();
+        context.getExceptionGuard().enable();
         linkKnownMocksToThis();
         beginStoryProcessors();
     }
@@ -418,9 +433,11 @@ class MockInvocationDispatcher extends MTDispatcher<MockInvocationDispatcher.Ite
             logger.trace("end", "ending story processors");
             unlinkKnownMocksFromThis();
             endStoryProcessors();
-            ExceptionGuard.get().throwIfPresent();
+            invalidateBindings();
+            context.getExceptionGuard().throwIfPresent();
         } finally {
-            ExceptionGuard.get().disable();
+            context.getExceptionGuard().disable();
+            context.detach();
         }
     }
 
@@ -460,7 +477,7 @@ class MockInvocationDispatcher extends MTDispatcher<MockInvocationDispatcher.Ite
      * @param scenario
      *            the appended scenario
      */
-    void append(Actor actor, Scenario scenario) {
+    synchronized void append(Actor actor, Scenario scenario) {
         logger.trace("append", "actor=", actor, "scenario=", scenario);
         StoryProcessor storyProcessor = getAssignedStoryProcessor(actor);
         // Should not be null. If this is the case, let the runtime exception
@@ -479,7 +496,7 @@ class MockInvocationDispatcher extends MTDispatcher<MockInvocationDispatcher.Ite
      * @param stubs
      *            the appended stubs
      */
-    void append(Actor actor, Stubs stubs) {
+    synchronized void append(Actor actor, Stubs stubs) {
         logger.trace("append", "actor=", actor, "stubs=", stubs);
         StubProcessor stubProcessor = getAssignedStubProcessor(actor);
         // Should not be null. If this is the case, let the runtime exception
@@ -9,6 +9,11 @@ package com.vmware.lmock.impl;
 
 /**
  * Different types of invocation handlers that can be associated to a mock.
+ *
+ * <p>
+ * The handlers validating the invocations are not associated to the mocks,
+ * but linked to them by the running stories (see <code>MockLinker</code>).
+ * </p>
  */
 enum MockInvocationHandlerType {
     /**
@@ -18,15 +23,5 @@ enum MockInvocationHandlerType {
      * There must be one and only one of such handler at a time.
      * </p>
      */
-    CONSTRUCTOR,
-    /**
-     * Used to validate the invocation.
-     *
-     * <p>
-     * The application may try to associate the mock to several of such handler,
-     * but only one is operating (which means that we overwrite this type of
-     * handler).
-     * </p>
-     */
-    CHECKER;
+    CONSTRUCTOR;
 }
@@ -7,24 +7,82 @@
  * ************************************************************************** */
 package com.vmware.lmock.impl;
 
-import static com.vmware.lmock.impl.MockInvocationHandlerType.CHECKER;
-
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Maintains a list of mocks and automatically links/unlinks an invocation
- * handler to each of them.
+ * Maintains a set of mocks and links/unlinks an invocation handler to all of
+ * them at once.
+ *
+ * <p>
+ * The handler validates the invocations of the linked mocks. Rather than
+ * assigning the handler to every mock, the linker is added to the list of
+ * linked linkers (<code>linkHandlerToRegisteredMocks</code>) or removed from
+ * it (<code>unlinkHandlerFromRegisteredMocks</code>), and the mocks look up
+ * this list when they are invoked
+ * (<code>getLinkedHandler</code>). Hence the cost of starting or ending a
+ * story does not depend on the number of mocks in play.
+ * </p>
+ *
+ * <p>
+ * Each change of the linked linkers starts a new generation. A mock
+ * remembers the handler found for the current generation, so that the lookup
+ * is only done on the first invocation following a change. When several
+ * linked linkers know a mock, the last linked wins. Registering a mock in a
+ * linker which is not linked changes no lookup, so it keeps the generation.
+ * </p>
  *
  * <p>
- * The handler is associated as a <code>CHECKER</code> to the mock invocation.
+ * The linker also records which methods of <code>Object</code> its
+ * expectations and stubs define for each mock. While the linker is linked,
+ * the invocations of these methods are not answered directly (see
+ * <code>Mock.answerObjectMethodsDirectly</code>), so that the redefinitions
+ * only apply to the running story.
  * </p>
  */
 class MockLinker {
+    /** The current generation of links. */
+    private static final AtomicLong generation = new AtomicLong();
+    /** The linked linkers, most recent first (copy-on-write). */
+    private static volatile MockLinker[] linkedLinkers = new MockLinker[0];
+
+    /**
+     * The handler linked to a mock, for a given generation.
+     */
+    static final class Link {
+        /** The linked handler, <code>null</code> if none. */
+        private final MockInvocationHandler handler;
+        /** The methods of <code>Object</code> redefined by the handler. */
+        private final int redefinedObjectMethods;
+        /** The generation of the link. */
+        private final long generation;
+
+        /**
+         * Creates a new link.
+         *
+         * @param handler
+         *            the linked handler, <code>null</code> if none
+         * @param redefinedObjectMethods
+         *            the ordinals of the methods of <code>Object</code>
+         *            redefined by the handler, as a bit mask
+         * @param generation
+         *            the generation of the link
+         */
+        Link(MockInvocationHandler handler, int redefinedObjectMethods, long generation) {
+            this.handler = handler;
+            this.redefinedObjectMethods = redefinedObjectMethods;
+            this.generation = generation;
+        }
+    }
     /** The object linked to mocks. */
     private final MockInvocationHandler linkedHandler;
-    /** List of known mocks. */
-    private final List<Mock> mockList = new ArrayList<Mock>();
+    /**
+     * The known mocks (compared by identity), along with the methods of
+     * <code>Object</code> redefined for them, as a bit mask.
+     */
+    private final ConcurrentHashMap<Mock, Integer> mocks = new ConcurrentHashMap<Mock, Integer>();
+    /** Asserted while this linker is in the linked linkers. */
+    private volatile boolean linked;
 
     /**
      * Creates a new linker for a given handler.
@@ -37,14 +95,46 @@ class MockLinker {
     }
 
     /**
-     * Adds one mock into the list of known mocks if not already registered.
+     * Gets the method of <code>Object</code> defined by an invocation checker.
+     *
+     * @param invocationChecker
+     *            the expectation or stub
+     * @return The ordinal of the method as a bit mask, 0 if the method is not
+     *         inherited from <code>Object</code>.
+     */
+    private static int getObjectMethod(InvocationChecker invocationChecker) {
+        int ordinal = invocationChecker.getMethodOrdinal();
+        return (ordinal >= 0 && ordinal < MethodTable.NR_OBJECT_METHODS) ? 1 << ordinal : 0;
+    }
+
+    /**
+     * Adds one mock into the set of known mocks.
+     *
+     * <p>
+     * If this linker is linked, the mocks which already looked up their
+     * handler must do it again.
+     * </p>
      *
      * @param mock
      *            the registered mock
+     * @param redefinedObjectMethods
+     *            the methods of <code>Object</code> redefined for this mock,
+     *            as a bit mask
      */
-    private void registerNewMock(Mock mock) {
-        if (!mockList.contains(mock)) {
-            mockList.add(mock);
+    private void registerNewMock(Mock mock, int redefinedObjectMethods) {
+        Integer previous = mocks.putIfAbsent(mock, redefinedObjectMethods);
+        while (previous != null && (previous | redefinedObjectMethods) != previous) {
+            if (mocks.replace(mock, previous, previous | redefinedObjectMethods)) {
+                previous = null;
+            } else {
+                previous = mocks.get(mock);
+            }
+        }
+
+        // The linker is flagged before starting a new generation when linked:
+        // if it is not flagged yet, the linking will start the generation.
+        if (previous == null && linked) {
+            generation.incrementAndGet();
         }
     }
 
@@ -56,7 +146,7 @@ class MockLinker {
      */
     void registerNewMocks(StubMap stubMap) {
         for (Mock mock : stubMap.getMockList()) {
-            registerNewMock(mock);
+            registerNewMock(mock, stubMap.getStubbedObjectMethods(mock));
         }
     }
 
@@ -68,27 +158,55 @@ class MockLinker {
      */
     void registerNewMocks(StoryProcessor processor) {
         for (Expectation expectation : processor.getExpectationList()) {
-            registerNewMock(expectation.getProxy());
+            registerNewMock(expectation.getProxy(), getObjectMethod(expectation));
         }
     }
 
     /**
-     * Parses the list of known mocks and associates them to the registered
-     * invocation handler.
+     * Links the handler to the known mocks, including the ones registered
+     * later on.
      */
     void linkHandlerToRegisteredMocks() {
-        for (Mock mock : mockList) {
-            mock.setInvocationHandler(CHECKER, linkedHandler);
+        synchronized (MockLinker.class) {
+            MockLinker[] current = linkedLinkers;
+            MockLinker[] newLinkers = new MockLinker[current.length + 1];
+            newLinkers[0] = this;
+            int index = 1;
+            for (MockLinker linker : current) {
+                if (linker != this) {
+                    newLinkers[index++] = linker;
+                }
+            }
+            if (index < newLinkers.length) {
+                MockLinker[] trimmed = new MockLinker[index];
+                System.arraycopy(newLinkers, 0, trimmed, 0, index);
+                newLinkers = trimmed;
+            }
+            linked = true;
+            linkedLinkers = newLinkers;
+            generation.incrementAndGet();
         }
     }
 
     /**
-     * Parses the list of known mocks and removes the association to the
-     * registered invocation handler.
+     * Removes the link of the handler to the known mocks.
      */
     void unlinkHandlerFromRegisteredMocks() {
-        for (Mock mock : mockList) {
-            mock.unsetInvocationHandler(CHECKER);
+        synchronized (MockLinker.class) {
+            MockLinker[] current = linkedLinkers;
+            int position = 0;
+            while (position < current.length && current[position] != this) {
+                position++;
+            }
+            if (position < current.length) {
+                MockLinker[] newLinkers = new MockLinker[current.length - 1];
+                System.arraycopy(current, 0, newLinkers, 0, position);
+                System.arraycopy(current, position + 1, newLinkers, position,
+                  newLinkers.length - position);
+                linked = false;
+                linkedLinkers = newLinkers;
+                generation.incrementAndGet();
+            }
         }
     }
 
@@ -99,8 +217,63 @@ class MockLinker {
      *            the reference expectation or stub
      */
     void registerAndLinkNewMocks(InvocationChecker invocationChecker) {
-        Mock mock = invocationChecker.getProxy();
-        registerNewMock(mock);
-        mock.setInvocationHandler(CHECKER, linkedHandler);
+        // The mock is linked as soon as it is known, if the handler is.
+        registerNewMock(invocationChecker.getProxy(), getObjectMethod(invocationChecker));
+    }
+
+    /**
+     * Gets the current link of a mock.
+     *
+     * @param mock
+     *            the mock
+     * @return The link.
+     */
+    private static Link getLink(Mock mock) {
+        // Read the generation first: if the linkers change in the meantime,
+        // the link will be looked up again on the next invocation.
+        long current = generation.get();
+        Link link = mock.getLink();
+        if (link != null && link.generation == current) {
+            return link;
+        }
+
+        link = null;
+        for (MockLinker linker : linkedLinkers) {
+            Integer redefinedObjectMethods = linker.mocks.get(mock);
+            if (redefinedObjectMethods != null) {
+                link = new Link(linker.linkedHandler, redefinedObjectMethods, current);
+                break;
+            }
+        }
+        if (link == null) {
+            link = new Link(null, 0, current);
+        }
+        mock.setLink(link);
+        return link;
+    }
+
+    /**
+     * Gets the handler currently linked to a mock.
+     *
+     * @param mock
+     *            the mock
+     * @return The linked handler, <code>null</code> if none.
+     */
+    static MockInvocationHandler getLinkedHandler(Mock mock) {
+        return getLink(mock).handler;
+    }
+
+    /**
+     * Tells whether a method of <code>Object</code> is expected or stubbed for
+     * a mock by the handler currently linked to it.
+     *
+     * @param mock
+     *            the mock
+     * @param ordinal
+     *            the ordinal of the method
+     * @return <code>true</code> if the method is redefined.
+     */
+    static boolean isRedefined(Mock mock, int ordinal) {
+        return (getLink(mock).redefinedObjectMethods & (1 << ordinal)) != 0;
     }
 }
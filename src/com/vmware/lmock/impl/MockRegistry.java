@@ -0,0 +1,151 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.impl;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Resolves the identity of mocks from arbitrary objects.
+ *
+ * <p>
+ * Checkers and traces constantly need to know whether an object is the proxy
+ * of a mock, and which mock it is. Asking <code>Proxy.getInvocationHandler</code>
+ * directly is not an option, since it throws an exception for every ordinary
+ * object.
+ * </p>
+ *
+ * <p>
+ * Instead, the registry keeps track of the proxy classes generated for mocks
+ * (<code>registerProxyClass</code>). Any object which class is not one of
+ * these is not a mock, which is decided with a single lookup. Otherwise, the
+ * invocation handler of the proxy is the mock itself. The classes generated
+ * for mocks (see <code>MockClassGenerator</code>) are registered the same way
+ * and directly refer to their mock.
+ * </p>
+ *
+ * <p>
+ * The set of known classes is small and almost never changes once the mocks
+ * are created. So it is maintained as a copy-on-write map, which allows to
+ * read it without any lock.
+ * </p>
+ *
+ * <p>
+ * Fetching the invocation handler of a proxy allocates memory on recent
+ * virtual machines. Since the same mocks are resolved again and again, the
+ * registry remembers the latest resolutions in a small cache, indexed by the
+ * identity hash code of the proxies. The entries are immutable, so the cache
+ * is read and updated without lock. They weakly refer to the mocks, so that
+ * the cache does not keep the mocks (and the stories they are linked to)
+ * alive.
+ * </p>
+ */
+final class MockRegistry {
+    /** The proxy classes generated for mocks, used as an identity set. */
+    private static volatile Map<Class<?>, Boolean> proxyClasses =
+      new IdentityHashMap<Class<?>, Boolean>();
+
+    /** Number of entries in the cache of resolved mocks (a power of two). */
+    private static final int CACHE_SIZE = 256;
+
+    /**
+     * An entry of the cache of resolved mocks.
+     *
+     * <p>
+     * The entry only refers to the mock, which itself refers to its proxy.
+     * </p>
+     */
+    private static final class Resolution extends WeakReference<Mock> {
+        /**
+         * Creates a new entry.
+         *
+         * @param mock
+         *            the resolved mock
+         */
+        Resolution(Mock mock) {
+            super(mock);
+        }
+    }
+    /** The latest resolved mocks. */
+    private static final Resolution[] cache = new Resolution[CACHE_SIZE];
+
+    /** This class only provides static methods. */
+    private MockRegistry() {
+    }
+
+    /**
+     * Registers the class of a proxy created for a mock.
+     *
+     * @param clazz
+     *            the proxy class
+     */
+    static void registerProxyClass(Class<?> clazz) {
+        if (!isMockProxyClass(clazz)) {
+            synchronized (MockRegistry.class) {
+                Map<Class<?>, Boolean> newClasses =
+                  new IdentityHashMap<Class<?>, Boolean>(proxyClasses);
+                newClasses.put(clazz, Boolean.TRUE);
+                proxyClasses = newClasses;
+            }
+        }
+    }
+
+    /**
+     * Tells whether a class was generated for mocks.
+     *
+     * @param clazz
+     *            the requested class
+     * @return <code>true</code> if objects of this class may be mocks.
+     */
+    static boolean isMockProxyClass(Class<?> clazz) {
+        return proxyClasses.containsKey(clazz);
+    }
+
+    /**
+     * Gets the mock owning an object, if any.
+     *
+     * <p>
+     * Notice that a proxy class may be shared with proxies that are not
+     * mocks, since the virtual machine reuses the same class for all the
+     * proxies of an interface. Hence the final check of the handler.
+     * </p>
+     *
+     * @param object
+     *            the requested object (can be <code>null</code>)
+     * @return The mock, <code>null</code> if the object is not a mock.
+     */
+    static Mock getMock(Object object) {
+        if (object == null || !isMockProxyClass(object.getClass())) {
+            return null;
+        }
+
+        if (object instanceof GeneratedMock) {
+            return ((GeneratedMock) object).getMock();
+        }
+
+        int slot = System.identityHashCode(object) & (CACHE_SIZE - 1);
+        Resolution resolution = cache[slot];
+        if (resolution != null) {
+            Mock mock = resolution.get();
+            if (mock != null && mock.getProxy() == object) {
+                return mock;
+            }
+        }
+
+        InvocationHandler handler = Proxy.getInvocationHandler(object);
+        if (handler instanceof Mock) {
+            cache[slot] = new Resolution((Mock) handler);
+            return (Mock) handler;
+        } else {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.impl;
+
+import com.vmware.lmock.checker.ByteChecker;
+import com.vmware.lmock.checker.Checker;
+import com.vmware.lmock.checker.ComparableChecker;
+import com.vmware.lmock.checker.DoubleChecker;
+import com.vmware.lmock.checker.FloatChecker;
+import com.vmware.lmock.checker.IntegerChecker;
+import com.vmware.lmock.checker.LongChecker;
+import com.vmware.lmock.checker.ShortChecker;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Indexes the stubs expecting an argument to be within a range of comparable
+ * values.
+ *
+ * <p>
+ * The ranges are organized in a centered interval tree per compared class,
+ * which finds the ranges containing an argument value without visiting the
+ * others. The candidates are finally checked as any other stub.
+ * </p>
+ *
+ * <p>
+ * Only the checkers known to reject any value out of their range are indexed:
+ * the numeric checkers of this library and the plain comparable checkers.
+ * </p>
+ *
+ * <p>
+ * As the string stub index, the trees are built lazily by the first search
+ * following new registrations, and searched without lock.
+ * </p>
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+final class RangeStubIndex {
+    /**
+     * A range, along with the stubs expecting it.
+     */
+    private static final class Range {
+        /** The lower bound, null if none. */
+        private final Comparable min;
+        /** The upper bound, null if none. */
+        private final Comparable max;
+        /** The stubs, in the order of registration. */
+        private final List<StubList.Entry> entries =
+          new CopyOnWriteArrayList<StubList.Entry>();
+
+        /**
+         * Creates a new range.
+         *
+         * @param min
+         *            the lower bound, null if none
+         * @param max
+         *            the upper bound, null if none
+         */
+        Range(Comparable min, Comparable max) {
+            this.min = min;
+            this.max = max;
+        }
+    }
+    /** Sorts the ranges by increasing lower bound. */
+    private static final Comparator<Range> byIncreasingMin = new Comparator<Range>() {
+        public int compare(Range range1, Range range2) {
+            if (range1.min == null) {
+                return (range2.min == null) ? 0 : -1;
+            } else if (range2.min == null) {
+                return 1;
+            } else {
+                return range1.min.compareTo(range2.min);
+            }
+        }
+    };
+    /** Sorts the ranges by decreasing upper bound. */
+    private static final Comparator<Range> byDecreasingMax = new Comparator<Range>() {
+        public int compare(Range range1, Range range2) {
+            if (range1.max == null) {
+                return (range2.max == null) ? 0 : -1;
+            } else if (range2.max == null) {
+                return 1;
+            } else {
+                return range2.max.compareTo(range1.max);
+            }
+        }
+    };
+
+    /**
+     * A node of an interval tree, holding the ranges containing its center.
+     */
+    private static final class Node {
+        /** The center of this node. */
+        private final Comparable center;
+        /** The ranges containing the center, by increasing lower bound. */
+        private final Range[] byMin;
+        /** The same ranges, by decreasing upper bound. */
+        private final Range[] byMax;
+        /** The ranges entirely lower than the center, null if none. */
+        private final Node left;
+        /** The ranges entirely greater than the center, null if none. */
+        private final Node right;
+
+        /**
+         * Builds the tree of a set of ranges.
+         *
+         * @param ranges
+         *            the ranges, not empty
+         */
+        Node(List<Range> ranges) {
+            List<Comparable> bounds = new ArrayList<Comparable>();
+            for (Range range : ranges) {
+                if (range.min != null) {
+                    bounds.add(range.min);
+                }
+                if (range.max != null) {
+                    bounds.add(range.max);
+                }
+            }
+            Collections.sort(bounds);
+            // Every range has a bound, so at least one contains the center.
+            center = bounds.get(bounds.size() / 2);
+
+            List<Range> lower = new ArrayList<Range>();
+            List<Range> greater = new ArrayList<Range>();
+            List<Range> containing = new ArrayList<Range>();
+            for (Range range : ranges) {
+                if (range.max != null && range.max.compareTo(center) < 0) {
+                    lower.add(range);
+                } else if (range.min != null && range.min.compareTo(center) > 0) {
+                    greater.add(range);
+                } else {
+                    containing.add(range);
+                }
+            }
+
+            byMin = containing.toArray(new Range[containing.size()]);
+            Arrays.sort(byMin, byIncreasingMin);
+            byMax = containing.toArray(new Range[containing.size()]);
+            Arrays.sort(byMax, byDecreasingMax);
+            left = lower.isEmpty() ? null : new Node(lower);
+            right = greater.isEmpty() ? null : new Node(greater);
+        }
+    }
+
+    /**
+     * The interval tree of the ranges of one compared class.
+     */
+    private static final class Tree {
+        /** The class of the values compared with the ranges. */
+        private final Class<?> clazz;
+        /** The root of the tree. */
+        private final Node root;
+
+        /**
+         * Creates a new tree.
+         *
+         * @param clazz
+         *            the class of the values compared with the ranges
+         * @param ranges
+         *            the ranges, not empty
+         */
+        Tree(Class<?> clazz, List<Range> ranges) {
+            this.clazz = clazz;
+            root = new Node(ranges);
+        }
+    }
+    /** The ranges, by compared class, then by bounds. */
+    private final Map<Class<?>, Map<List<Comparable>, Range>> ranges =
+      new HashMap<Class<?>, Map<List<Comparable>, Range>>();
+    /** The trees, <code>null</code> if they must be (re)built. */
+    private volatile Tree[] trees;
+
+    /**
+     * Tells whether a checker can be indexed.
+     *
+     * @param checker
+     *            the checker
+     * @return <code>true</code> if the checker rejects any value out of a
+     *         range with at least one bound.
+     */
+    static boolean canIndex(Checker<?> checker) {
+        if (!(checker instanceof IntegerChecker || checker instanceof LongChecker
+          || checker instanceof ShortChecker || checker instanceof ByteChecker
+          || checker instanceof DoubleChecker || checker instanceof FloatChecker
+          || checker.getClass() == ComparableChecker.class)) {
+            return false;
+        }
+
+        ComparableChecker<?> comparableChecker = (ComparableChecker<?>) checker;
+        return comparableChecker.getMin() != null || comparableChecker.getMax() != null;
+    }
+
+    /**
+     * Registers a new stub.
+     *
+     * @param checker
+     *            the range checker of the stub, at the indexed position
+     * @param entry
+     *            the stub entry
+     */
+    synchronized void add(ComparableChecker<?> checker, StubList.Entry entry) {
+        Map<List<Comparable>, Range> classRanges = ranges.get(checker.getRelatedClass());
+        if (classRanges == null) {
+            classRanges = new HashMap<List<Comparable>, Range>();
+            ranges.put(checker.getRelatedClass(), classRanges);
+        }
+
+        List<Comparable> bounds = Arrays.<Comparable> asList(checker.getMin(), checker.getMax());
+        Range range = classRanges.get(bounds);
+        if (range == null) {
+            // This is a new range: the trees must be rebuilt.
+            range = new Range(checker.getMin(), checker.getMax());
+            classRanges.put(bounds, range);
+            trees = null;
+        }
+        range.entries.add(entry);
+    }
+
+    /** @return The up-to-date trees. */
+    private Tree[] getTrees() {
+        Tree[] current = trees;
+        if (current == null) {
+            synchronized (this) {
+                current = trees;
+                if (current == null) {
+                    current = new Tree[ranges.size()];
+                    int index = 0;
+                    for (Map.Entry<Class<?>, Map<List<Comparable>, Range>> entry : ranges.entrySet()) {
+                        current[index++] = new Tree(entry.getKey(),
+                          new ArrayList<Range>(entry.getValue().values()));
+                    }
+                    trees = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Searches the youngest stub matching an invocation among the stubs which
+     * ranges contain a given argument value.
+     *
+     * @param value
+     *            the argument value
+     * @param invocation
+     *            the checked invocation
+     * @param best
+     *            the youngest matching entry found so far, <code>null</code>
+     *            if none
+     * @return The youngest matching entry.
+     */
+    StubList.Entry search(Comparable value, Invocation invocation, StubList.Entry best) {
+        for (Tree tree : getTrees()) {
+            if (tree.clazz.isInstance(value)) {
+                best = search(tree.root, value, invocation, best);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Searches a tree for the youngest stub matching an invocation among the
+     * stubs which ranges contain a given argument value.
+     *
+     * @param node
+     *            the root of the tree
+     * @param value
+     *            the argument value
+     * @param invocation
+     *            the checked invocation
+     * @param best
+     *            the youngest matching entry found so far, <code>null</code>
+     *            if none
+     * @return The youngest matching entry.
+     */
+    private StubList.Entry search(Node node, Comparable value, Invocation invocation,
+      StubList.Entry best) {
+        while (node != null) {
+            int comparison = value.compareTo(node.center);
+            if (comparison < 0) {
+                for (Range range : node.byMin) {
+                    if (range.min != null && range.min.compareTo(value) > 0) {
+                        break;
+                    }
+                    best = StubList.searchYoungerEntry(range.entries, invocation, best);
+                }
+                node = node.left;
+            } else if (comparison > 0) {
+                for (Range range : node.byMax) {
+                    if (range.max != null && range.max.compareTo(value) < 0) {
+                        break;
+                    }
+                    best = StubList.searchYoungerEntry(range.entries, invocation, best);
+                }
+                node = node.right;
+            } else {
+                for (Range range : node.byMin) {
+                    best = StubList.searchYoungerEntry(range.entries, invocation, best);
+                }
+                node = null;
+            }
+        }
+        return best;
+    }
+}
@@ -58,6 +58,18 @@ import com.vmware.lmock.clauses.HasOccurrencesSpecificationClauses;
  * The expectation information consist in common expectation clauses, such as
  * <code>occurs</code> etc.
  * </p>
+ * <p>
+ * A set of expectations that may occur in any order can be declared as an
+ * unordered group, described by another scenario:
+ * </p>
+ *
+ * <pre>
+ * <code>
+ *         inAnyOrder(new Scenario() {{
+ *             ...EXPECTATIONS...
+ *         }});
+ * </code>
+ * </pre>
  */
 public class Scenario extends ExpectationListBuilder implements
   HasExpectationSpecificationClauses, HasArgumentSpecificationClauses,
@@ -117,6 +129,29 @@ public class Scenario extends ExpectationListBuilder implements
         return object;
     }
 
+    /**
+     * Appends a group of expectations that may be satisfied in any order.
+     *
+     * <p>
+     * The story reaches the group as a whole, after the expectations declared
+     * before. Any invocation matching a member of the group then satisfies
+     * that member, until an invocation matches none of them. At this point,
+     * every member must be satisfied and the story goes on with the
+     * expectations declared after the group.
+     * </p>
+     *
+     * @param group
+     *            the scenario describing the expectations of the group
+     */
+    public final void inAnyOrder(Scenario group) {
+        logger.trace("inAnyOrder", "group=", group);
+        Expectation[] members = group.createExpectations();
+        if (members.length != 0) {
+            new UnorderedGroup(members);
+            append(group);
+        }
+    }
+
     @Override
     public final Expectation occurs(OccurrenceChecker occurrences) {
         logger.trace("occurs", "occurrences=", occurrences);
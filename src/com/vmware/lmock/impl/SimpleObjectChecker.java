@@ -8,6 +8,9 @@
 package com.vmware.lmock.impl;
 
 import com.vmware.lmock.checker.Checker;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Checks the coherence of objects <b>different from arrays</b>.
@@ -24,6 +27,10 @@ import com.vmware.lmock.checker.Checker;
  * </p>
  */
 class SimpleObjectChecker implements Checker<Object> {
+    /** The classes of immutable values, with a stable hash code. */
+    private static final Set<Class<?>> stableHashClasses = new HashSet<Class<?>>(
+      Arrays.<Class<?>> asList(String.class, Boolean.class, Character.class,
+      Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class));
     /** Reference object, or mock. */
     private final Object referenceObject;
 
@@ -46,7 +53,7 @@ class SimpleObjectChecker implements Checker<Object> {
      *            the second argument to check
      * @return true if the two arguments are equal.
      */
-    private static boolean valuesAreEqual(Object value1, Object value2) {
+    static boolean valuesAreEqual(Object value1, Object value2) {
         if (value1 == null) {
             return value2 == null;
         } else if (value2 == null) {
@@ -76,6 +83,42 @@ class SimpleObjectChecker implements Checker<Object> {
         return valuesAreEqual(referenceObject, actualObject);
     }
 
+    /** @return The reference object, or mock. */
+    Object getReferenceObject() {
+        return referenceObject;
+    }
+
+    /**
+     * Tells whether the reference object can be found by its hash code.
+     *
+     * <p>
+     * The hash code of the reference object is taken when the stub is
+     * registered, so it must not change afterwards: this is the case of
+     * mocks, strings, boxed primitives, enumerations, classes and objects
+     * keeping the identity semantics of <code>Object</code>. Other objects may
+     * be mutated after the stub registration (a list, for example) and are not
+     * indexed.
+     * </p>
+     *
+     * @return <code>true</code> if the reference object can be used as a key
+     *         of hash tables.
+     */
+    boolean isHashable() {
+        if (referenceObject == null || referenceObject instanceof Mock
+          || referenceObject instanceof Enum || referenceObject instanceof Class
+          || stableHashClasses.contains(referenceObject.getClass())) {
+            return true;
+        }
+
+        try {
+            Class<?> clazz = referenceObject.getClass();
+            return clazz.getMethod("equals", Object.class).getDeclaringClass() == Object.class
+              && clazz.getMethod("hashCode").getDeclaringClass() == Object.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
     @Override
     public Class<?> getRelatedClass() {
         if (referenceObject == null) {
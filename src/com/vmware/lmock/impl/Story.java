@@ -187,8 +187,6 @@ public final class Story implements HasAppendClauses {
      */
     public void begin() {
         logger.trace("begin");
-        // The story track is outdated.
-        StoryTrack.get().clearTrackers();
         dispatcher.begin();
     }
 
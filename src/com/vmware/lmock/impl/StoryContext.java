@@ -0,0 +1,128 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The runtime state of one story: guarded exceptions, story track and linked
+ * mocks.
+ *
+ * <p>
+ * Each story has its own context, so that independent stories run by
+ * different threads do not mix up their errors and reports. A thread adopts
+ * the context of the story it begins (<code>attach</code>) and keeps it once
+ * the story is over, so that the story track remains available for post-mortem
+ * analysis. The errors of such a thread are never reported by the stories of
+ * other threads.
+ * </p>
+ *
+ * <p>
+ * The threads which did not begin any story (typically the threads taking
+ * part in a multi-threaded story) refer to the latest story begun and still
+ * running. Otherwise, they get a default context, which guards nothing.
+ * </p>
+ *
+ * <p>
+ * A story stops running when it ends or when it fails (<code>detach</code>),
+ * so that the running stories only include the ones which can still report
+ * errors.
+ * </p>
+ */
+final class StoryContext {
+    /** The context of the story begun by each thread, if any. */
+    private static final ThreadLocal<StoryContext> threadContext = new ThreadLocal<StoryContext>();
+    /** The running stories, latest begun first. */
+    private static final List<StoryContext> runningContexts = new ArrayList<StoryContext>();
+    /** The context used when no story is known. */
+    private static final StoryContext defaultContext = new StoryContext(null);
+    /** The guarded exceptions of the story. */
+    private final ExceptionGuard guard = new ExceptionGuard();
+    /** The story track. */
+    private final StoryTrack track = new StoryTrack();
+    /** Links the mocks to the story, <code>null</code> for the default context. */
+    private final MockLinker linker;
+
+    /**
+     * Creates a new context.
+     *
+     * @param linker
+     *            the linker of the mocks of the story
+     */
+    StoryContext(MockLinker linker) {
+        this.linker = linker;
+    }
+
+    /** @return The context of the current thread. */
+    static StoryContext current() {
+        StoryContext context = threadContext.get();
+        if (context == null) {
+            synchronized (runningContexts) {
+                context = runningContexts.isEmpty() ? defaultContext : runningContexts.get(0);
+            }
+        }
+        return context;
+    }
+
+    /** @return The exception guard of the story. */
+    ExceptionGuard getExceptionGuard() {
+        return guard;
+    }
+
+    /** @return The story track. */
+    StoryTrack getStoryTrack() {
+        return track;
+    }
+
+    /**
+     * Makes this context the one of the current thread, when the story begins.
+     */
+    void attach() {
+        threadContext.set(this);
+        synchronized (runningContexts) {
+            runningContexts.remove(this);
+            runningContexts.add(0, this);
+        }
+    }
+
+    /**
+     * Notifies the end or the failure of the story.
+     *
+     * <p>
+     * The beginning thread keeps the context, for post-mortem reports.
+     * </p>
+     */
+    void detach() {
+        synchronized (runningContexts) {
+            runningContexts.remove(this);
+        }
+    }
+
+    /** Unlinks the mocks from the story. */
+    void cleanup() {
+        if (linker != null) {
+            linker.unlinkHandlerFromRegisteredMocks();
+        }
+    }
+
+    /**
+     * Unlinks the mocks from the story begun by the current thread, if any.
+     *
+     * <p>
+     * The stories begun by other threads are left untouched, even if the
+     * current thread takes part in one of them.
+     * </p>
+     */
+    static void cleanupCurrentThread() {
+        StoryContext context = threadContext.get();
+        if (context != null) {
+            context.cleanup();
+        }
+    }
+}
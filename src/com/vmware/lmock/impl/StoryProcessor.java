@@ -14,15 +14,29 @@ import com.vmware.lmock.exception.UnsatisfiedOccurrenceError;
 /**
  * Core engine validating the progress of a story regarding a list of
  * expectations.
+ *
+ * <p>
+ * A processor is shared by all the actors following the same scenario, which
+ * may run in different threads. So the public methods are synchronized on
+ * the processor.
+ * </p>
+ *
+ * <p>
+ * The expectations of an unordered group are handled as a single step of the
+ * story: the group is started when the story reaches its first member, and is
+ * left as a whole (see <code>UnorderedGroup</code>).
+ * </p>
  */
 class StoryProcessor {
 
     /** Logs the processor activity. */
     private static final Logger logger = Logger.get(StoryProcessor.class);
+    /** Handle default invocations. */
+    private static final InvocationHooks invocationHooks = InvocationHooks.get();
+    /** The runtime state of the story. */
+    private final StoryContext context;
     /** The list of expectations checked by this story. */
     private final ExpectationList expectationList;
-    /** Handle default invocations. */
-    private final InvocationHooks invocationHooks = new InvocationHooks();
     /** Keeps track of the expectations achieved by this processor. */
     private final StoryTracker storyTracker = new StoryTracker();
 
@@ -33,11 +47,14 @@ class StoryProcessor {
      * Registers the specified expectation list to validate the story.
      * </p>
      *
+     * @param context
+     *            the runtime state of the story
      * @param expectationList
      *            the list of expectations in the scenario
      */
-    protected StoryProcessor(ExpectationList expectationList) {
+    protected StoryProcessor(StoryContext context, ExpectationList expectationList) {
         logger.trace("StoryProcessor", "expectationList=", expectationList);
+        this.context = context;
         this.expectationList = expectationList;
     }
 
@@ -54,6 +71,21 @@ class StoryProcessor {
         return storyTracker.size() == 0;
     }
 
+    /**
+     * Starts an expectation when the story reaches it.
+     *
+     * @param expectation
+     *            the new current expectation
+     */
+    private void startExpectation(Expectation expectation) {
+        UnorderedGroup group = expectation.getGroup();
+        if (group == null) {
+            storyTracker.addExpectationReport(expectation);
+        } else {
+            group.start(storyTracker);
+        }
+    }
+
     /**
      * Moves to the first expectation if and only if not done yet.
      */
@@ -64,7 +96,7 @@ class StoryProcessor {
             if (expect != null) {
                 logger.trace("moveToFirstExpectationIfNeeded", "resetting");
                 expect.getOccurrences().reset();
-                storyTracker.addExpectationReport(expect);
+                startExpectation(expect);
             }
         }
     }
@@ -75,7 +107,7 @@ class StoryProcessor {
      * @param expectation
      *            the new expectation
      */
-    protected void addExpectation(Expectation expectation) {
+    protected synchronized void addExpectation(Expectation expectation) {
         logger.trace("addExpectation", "expectationList=", expectationList, "expectation=", expectation);
         expectationList.addExpectation(expectation);
         moveToFirstExpectationIfNeeded();
@@ -87,7 +119,8 @@ class StoryProcessor {
      *
      * <p>
      * The method cleans the pending resources for the current expectation, if
-     * any.
+     * any. If the current expectation belongs to an unordered group, the
+     * whole group is left.
      * </p>
      *
      * @return The next expectation, null if the scenario is complete.
@@ -95,11 +128,17 @@ class StoryProcessor {
     private Expectation nextExpectation() {
         logger.trace("nextExpectation", "expectationList=", expectationList);
         Expectation currentExpectation = expectationList.getCurrentExpectation();
-        currentExpectation.getOccurrences().reset();
-        expectationList.nextExpectation();
+        UnorderedGroup group = currentExpectation.getGroup();
+        if (group == null) {
+            currentExpectation.getOccurrences().reset();
+            expectationList.nextExpectation();
+        } else {
+            group.reset();
+            expectationList.skipExpectations(group.size());
+        }
         currentExpectation = expectationList.getCurrentExpectation();
         if (currentExpectation != null) {
-            storyTracker.addExpectationReport(currentExpectation);
+            startExpectation(currentExpectation);
         }
         return currentExpectation;
     }
@@ -111,16 +150,41 @@ class StoryProcessor {
      */
     private Expectation haveALookAtNextExpectation() {
         logger.trace("haveALookAtNextExpectation", "expectationList=", expectationList);
-        return expectationList.nextExpectationWithoutChangingCurrent();
+        Expectation currentExpectation = expectationList.getCurrentExpectation();
+        if (currentExpectation.getGroup() == null) {
+            return expectationList.nextExpectationWithoutChangingCurrent();
+        } else {
+            return expectationList.getExpectationAfter(currentExpectation.getGroup().size());
+        }
+    }
+
+    /**
+     * Checks whether the next step of the story may satisfy an invocation.
+     *
+     * @param next
+     *            the next expectation, or the first member of the next group
+     * @param invocation
+     *            the checked invocation
+     * @return <code>true</code> if the next expectation, or a member of the
+     *         next group, is compatible with the invocation.
+     */
+    private static boolean nextStepAccepts(Expectation next, Invocation invocation) {
+        if (next == null) {
+            return false;
+        } else if (next.getGroup() == null) {
+            return next.valueIsCompatibleWith(invocation);
+        } else {
+            return next.getGroup().accepts(invocation);
+        }
     }
 
     /**
      * Begins the story.
      */
-    public void begin() {
+    public synchronized void begin() {
         logger.trace("begin", "expectationList=", expectationList);
         storyTracker.clear();
-        StoryTrack.get().registerTrackerIfNeeded(storyTracker);
+        context.getStoryTrack().registerTrackerIfNeeded(storyTracker);
         if (expectationList != null) {
             // Rewind in case of...
             expectationList.rewind();
@@ -140,7 +204,10 @@ class StoryProcessor {
         Expectation currentExpectation = expectationList.getCurrentExpectation();
         while (currentExpectation != null) {
             logger.trace("checkEveryExpectationIsSatisfied", "checking expectation=", currentExpectation);
-            if (!currentExpectation.getOccurrences().canEndNow()) {
+            UnorderedGroup group = currentExpectation.getGroup();
+            if (group != null && !group.canEndNow()) {
+                throw new UnsatisfiedOccurrenceError(group.getFirstUnsatisfiedExpectation());
+            } else if (group == null && !currentExpectation.getOccurrences().canEndNow()) {
                 logger.trace("checkEveryExpectationIsSatisfied", "occurrence=", currentExpectation, "can't end now!");
                 throw new UnsatisfiedOccurrenceError(currentExpectation);
             }
@@ -153,6 +220,8 @@ class StoryProcessor {
     private void cleanup() {
         logger.trace("cleanup", "expectationList=", expectationList);
         expectationList.unwind();
+        // The processor may end in any thread taking part in the story.
+        context.cleanup();
         Cleaner.cleanup();
     }
 
@@ -167,7 +236,7 @@ class StoryProcessor {
      *             This invocation comes while the previous expectation was not
      *             complete.
      */
-    public void end() {
+    public synchronized void end() {
         logger.trace("end", "expectationList=", expectationList);
         try {
             checkEveryExpectationIsSatisfied();
@@ -190,9 +259,61 @@ class StoryProcessor {
     private void end(ExpectationError error) {
         logger.trace("end", "expectationList=", expectationList, "error=", error);
         cleanup();
+        // The story is over: only its guard still matters, to report the
+        // error when ending the story.
+        context.detach();
         throw error;
     }
 
+    /**
+     * Validates the invocation of a mock regarding an unordered group.
+     *
+     * <p>
+     * If no member of the group can satisfy the invocation, the story may go
+     * beyond the group, provided that every member is satisfied. The rules
+     * are the same as for a single expectation which can end now.
+     * </p>
+     *
+     * @param group
+     *            the current group
+     * @param invocation
+     *            the invocation
+     * @return The invocation result, <code>null</code> if the story moved
+     *         beyond the group.
+     * @throws UnsatisfiedOccurrenceException
+     *             No member of the group can satisfy the invocation, while
+     *             some are not satisfied.
+     */
+    private InvocationResultProvider invokeGroup(UnorderedGroup group, Invocation invocation) {
+        InvocationResultProvider result = group.invoke(invocation);
+        if (result != null) {
+            logger.trace("invokeGroup", "invocation is compatible with a member of the group => SUCCESS");
+            return result;
+        }
+
+        if (group.canEndNow()) {
+            if (nextStepAccepts(haveALookAtNextExpectation(), invocation)) {
+                logger.trace("invokeGroup", "next expectation continues the group, going forward");
+                nextExpectation();
+                return null;
+            }
+
+            result = invocationHooks.tryInvocation(invocation);
+            if (result == null) {
+                logger.trace("invokeGroup", "finally, let's try the next expectation");
+                nextExpectation();
+            }
+            return result;
+        } else {
+            result = invocationHooks.tryInvocation(invocation);
+            if (result == null) {
+                logger.trace("invokeGroup", "group", group, "is not satisfied by", invocation);
+                end(new UnsatisfiedOccurrenceError(group.getFirstUnsatisfiedExpectation()));
+            }
+            return result;
+        }
+    }
+
     /**
      * Validates the invocation of a mock regarding the scenario.
      *
@@ -207,7 +328,7 @@ class StoryProcessor {
      *             This invocation comes while the previous expectation was not
      *             complete.
      */
-    public InvocationResultProvider invoke(Invocation invocation) {
+    public synchronized InvocationResultProvider invoke(Invocation invocation) {
         logger.trace("invoke", "invocation=", invocation, "expectationList=", expectationList);
         Expectation currentExpectation;
 
@@ -236,6 +357,11 @@ class StoryProcessor {
                 }
             }
 
+            if (currentExpectation.getGroup() != null) {
+                result = invokeGroup(currentExpectation.getGroup(), invocation);
+                continue;
+            }
+
             logger.trace("invoke", "checking that expectation", currentExpectation, "is compatible with", invocation);
             if (currentExpectation.valueIsCompatibleWith(invocation)) {
                 logger.trace("invoke", "value is compatible with invocation, checking occurrence limit");
@@ -272,7 +398,7 @@ class StoryProcessor {
                         // a default hook
                         logger.trace("invoke", "can continue to the next expectation", "checking the next one");
                         Expectation next = haveALookAtNextExpectation();
-                        if (next != null && next.valueIsCompatibleWith(invocation)) {
+                        if (nextStepAccepts(next, invocation)) {
                             logger.trace("invoke", "next expectation continues current expectation, going forward");
                             nextExpectation();
                         } else {
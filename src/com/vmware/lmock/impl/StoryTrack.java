@@ -14,29 +14,32 @@ import java.util.List;
  * Tracks a story as it goes.
  *
  * <p>
- * The story track is a singleton used to keep track of the different
- * expectations satisfied when playing stories. It basically consists in lists
- * of expectation reports stored by story trackers. In practice, there will be
+ * The story track is used to keep track of the different expectations
+ * satisfied when playing a story. It basically consists in lists of
+ * expectation reports stored by story trackers. In practice, there will be
  * one story tracker per thread.
  * </p>
  *
  * <p>
- * As a singleton, the story track can be checked at any moment, even if no
- * story is ongoing (which simplifies post-mortem analysis and reports of
- * invocations on mocks that do not contribute to the current story).
+ * Each story has its own track. The track of the story begun by the current
+ * thread can be checked at any moment, even once the story is over (which
+ * simplifies post-mortem analysis and reports of invocations on mocks that do
+ * not contribute to the current story).
  * </p>
  */
 public final class StoryTrack {
-    /** THE story track, accessible via <code>get</code>. */
-    private static final StoryTrack track = new StoryTrack();
     /** List of registered story trackers. */
     private final List<StoryTracker> trackers = new ArrayList<StoryTracker>();
 
+    /** Creates a new, empty, track. */
+    StoryTrack() {
+    }
+
     /**
-     * @return The story track.
+     * @return The story track of the current thread.
      */
     public static StoryTrack get() {
-        return track;
+        return StoryContext.current().getStoryTrack();
     }
 
     /**
@@ -49,7 +52,7 @@ public final class StoryTrack {
      * @param tracker
      *            the tracker
      */
-    void registerTrackerIfNeeded(StoryTracker tracker) {
+    synchronized void registerTrackerIfNeeded(StoryTracker tracker) {
         if (!trackers.contains(tracker)) {
             trackers.add(tracker);
         }
@@ -58,7 +61,7 @@ public final class StoryTrack {
     /**
      * Unregisters ALL the trackers.
      */
-    void clearTrackers() {
+    synchronized void clearTrackers() {
         trackers.clear();
     }
 
@@ -73,7 +76,7 @@ public final class StoryTrack {
      * @return The story track.
      */
     @Override
-    public String toString() {
+    public synchronized String toString() {
         StringBuilder builder = new StringBuilder(64);
 
         for (StoryTracker tracker : trackers) {
@@ -86,7 +89,7 @@ public final class StoryTrack {
     /**
      * @return The total number of reports in every registered tracker.
      */
-    public int size() {
+    public synchronized int size() {
         int result = 0;
 
         for (StoryTracker tracker : trackers) {
@@ -31,9 +31,12 @@ class StoryTracker implements Iterable<ExpectationReport> {
      *
      * @param expectation
      *            the new expectation
+     * @return The created report.
      */
-    void addExpectationReport(Expectation expectation) {
-        reports.add(new ExpectationReport(expectation));
+    ExpectationReport addExpectationReport(Expectation expectation) {
+        ExpectationReport report = new ExpectationReport(expectation);
+        reports.add(report);
+        return report;
     }
 
     /**
@@ -0,0 +1,350 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.impl;
+
+import com.vmware.lmock.checker.StringChecker;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Indexes the stubs expecting a string argument to be equal to, contain, start
+ * with or end with a reference string.
+ *
+ * <p>
+ * The references are compiled into an Aho-Corasick automaton, which finds
+ * every reference appearing in an argument value in one pass over that value.
+ * Each occurrence tells whether the related stubs are candidates, according
+ * to the position of the occurrence and the type of the string checker. The
+ * candidates are finally checked as any other stub.
+ * </p>
+ *
+ * <p>
+ * The automaton ignores the case, so that one automaton serves both the case
+ * sensitive and insensitive checkers: it may report more candidates than
+ * required, but never misses one.
+ * </p>
+ *
+ * <p>
+ * Since the automaton must be rebuilt when a new reference is registered, it
+ * is built lazily by the first search following the registrations. The
+ * searches are otherwise done without lock.
+ * </p>
+ */
+final class StringStubIndex {
+    /**
+     * A reference string, along with the stubs expecting it.
+     */
+    private static final class Target {
+        /** The type of comparison. */
+        private final StringChecker.Type type;
+        /** The length of the reference. */
+        private final int length;
+        /** The stubs, in the order of registration. */
+        private final List<StubList.Entry> entries =
+          new CopyOnWriteArrayList<StubList.Entry>();
+        /** The stamp of the last search which checked the stubs. */
+        private volatile long stamp;
+
+        /**
+         * Creates a new target.
+         *
+         * @param type
+         *            the type of comparison
+         * @param length
+         *            the length of the reference
+         */
+        Target(StringChecker.Type type, int length) {
+            this.type = type;
+            this.length = length;
+        }
+
+        /**
+         * Tells whether an occurrence of the reference in a value satisfies the
+         * type of comparison.
+         *
+         * @param end
+         *            the position following the occurrence in the value
+         * @param valueLength
+         *            the length of the value
+         * @return <code>true</code> if the stubs of this target are candidates.
+         */
+        boolean accepts(int end, int valueLength) {
+            switch (type) {
+                case EQUALS:
+                    return end == valueLength && length == valueLength;
+                case STARTS_WITH:
+                    return end == length;
+                case ENDS_WITH:
+                    return end == valueLength;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * The automaton, stored as parallel arrays indexed by state. State 0 is
+     * the root.
+     */
+    private static final class Automaton {
+        /** Per state, the sorted characters of the outgoing transitions. */
+        private final char[][] labels;
+        /** Per state, the targets of the outgoing transitions. */
+        private final int[][] next;
+        /** Per state, the state to fall back on when no transition applies. */
+        private final int[] failures;
+        /** Per state, the next state of the suffix chain having outputs. */
+        private final int[] outputLinks;
+        /** Per state, the targets ending at this state, <code>null</code> if none. */
+        private final Target[][] outputs;
+
+        /**
+         * Builds the automaton recognizing a set of references.
+         *
+         * @param targets
+         *            the targets, by case folded reference
+         */
+        Automaton(Map<String, List<Target>> targets) {
+            // Build the trie.
+            List<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+            List<Target[]> stateOutputs = new ArrayList<Target[]>();
+            trie.add(new TreeMap<Character, Integer>());
+            stateOutputs.add(null);
+            for (Map.Entry<String, List<Target>> entry : targets.entrySet()) {
+                String reference = entry.getKey();
+                int state = 0;
+                for (int index = 0; index < reference.length(); index++) {
+                    Integer nextState = trie.get(state).get(reference.charAt(index));
+                    if (nextState == null) {
+                        nextState = trie.size();
+                        trie.get(state).put(reference.charAt(index), nextState);
+                        trie.add(new TreeMap<Character, Integer>());
+                        stateOutputs.add(null);
+                    }
+                    state = nextState;
+                }
+                stateOutputs.set(state, entry.getValue().toArray(new Target[0]));
+            }
+
+            int size = trie.size();
+            labels = new char[size][];
+            next = new int[size][];
+            failures = new int[size];
+            outputLinks = new int[size];
+            outputs = stateOutputs.toArray(new Target[size][]);
+            for (int state = 0; state < size; state++) {
+                TreeMap<Character, Integer> transitions = trie.get(state);
+                labels[state] = new char[transitions.size()];
+                next[state] = new int[transitions.size()];
+                int index = 0;
+                for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+                    labels[state][index] = transition.getKey();
+                    next[state][index] = transition.getValue();
+                    index++;
+                }
+            }
+
+            // Compute the failure and output links, breadth first.
+            LinkedList<Integer> queue = new LinkedList<Integer>();
+            outputLinks[0] = -1;
+            for (int child : next[0]) {
+                failures[child] = 0;
+                outputLinks[child] = -1;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.removeFirst();
+                for (int index = 0; index < labels[state].length; index++) {
+                    int child = next[state][index];
+                    int failure = failures[state];
+                    int fallback = transition(failure, labels[state][index]);
+                    while (fallback < 0 && failure != 0) {
+                        failure = failures[failure];
+                        fallback = transition(failure, labels[state][index]);
+                    }
+                    failures[child] = (fallback < 0) ? 0 : fallback;
+                    outputLinks[child] = (outputs[failures[child]] != null)
+                      ? failures[child] : outputLinks[failures[child]];
+                    queue.add(child);
+                }
+            }
+        }
+
+        /**
+         * Gets the transition of a state for a given character.
+         *
+         * @param state
+         *            the current state
+         * @param c
+         *            the case folded character
+         * @return The next state, -1 if there is no such transition.
+         */
+        int transition(int state, char c) {
+            char[] stateLabels = labels[state];
+            int low = 0;
+            int high = stateLabels.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (stateLabels[middle] < c) {
+                    low = middle + 1;
+                } else if (stateLabels[middle] > c) {
+                    high = middle - 1;
+                } else {
+                    return next[state][middle];
+                }
+            }
+            return -1;
+        }
+    }
+    /** The targets, by case folded reference. */
+    private final Map<String, List<Target>> targets = new HashMap<String, List<Target>>();
+    /** The automaton, <code>null</code> if it must be (re)built. */
+    private volatile Automaton automaton;
+    /** Provides a distinct stamp to each search. */
+    private final AtomicLong searches = new AtomicLong();
+
+    /**
+     * Folds the case of a character, the same way as
+     * <code>String.regionMatches</code> does.
+     *
+     * @param c
+     *            the character
+     * @return The folded character.
+     */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Folds the case of a string.
+     *
+     * @param string
+     *            the string
+     * @return The folded string.
+     */
+    private static String fold(String string) {
+        char[] chars = string.toCharArray();
+        for (int index = 0; index < chars.length; index++) {
+            chars[index] = fold(chars[index]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Tells whether a string checker can be indexed.
+     *
+     * @param checker
+     *            the checker
+     * @return <code>true</code> if the checker compares the values with a
+     *         non-empty reference, without regular expression.
+     */
+    static boolean canIndex(StringChecker checker) {
+        return checker.getType() != StringChecker.Type.MATCHES
+          && checker.getReference() != null
+          && checker.getReference().length() != 0;
+    }
+
+    /**
+     * Registers a new stub.
+     *
+     * @param checker
+     *            the string checker of the stub, at the indexed position
+     * @param entry
+     *            the stub entry
+     */
+    synchronized void add(StringChecker checker, StubList.Entry entry) {
+        String key = fold(checker.getReference());
+        List<Target> keyTargets = targets.get(key);
+        if (keyTargets == null) {
+            keyTargets = new ArrayList<Target>();
+            targets.put(key, keyTargets);
+        }
+
+        for (Target target : keyTargets) {
+            if (target.type == checker.getType()) {
+                target.entries.add(entry);
+                return;
+            }
+        }
+
+        // This is a new reference: the automaton must be rebuilt.
+        Target target = new Target(checker.getType(), key.length());
+        target.entries.add(entry);
+        keyTargets.add(target);
+        automaton = null;
+    }
+
+    /** @return The up-to-date automaton. */
+    private Automaton getAutomaton() {
+        Automaton current = automaton;
+        if (current == null) {
+            synchronized (this) {
+                current = automaton;
+                if (current == null) {
+                    current = new Automaton(targets);
+                    automaton = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Searches the youngest stub matching an invocation among the candidates
+     * for a given argument value.
+     *
+     * <p>
+     * A reference may occur many times in the value: its stubs are only
+     * checked on the first accepted occurrence. The searches stamp the
+     * checked targets for this purpose. Concurrent searches may overwrite the
+     * stamps of each other, which only leads to redundant checks.
+     * </p>
+     *
+     * @param value
+     *            the argument value
+     * @param invocation
+     *            the checked invocation
+     * @param best
+     *            the youngest matching entry found so far, <code>null</code>
+     *            if none
+     * @return The youngest matching entry.
+     */
+    StubList.Entry search(String value, Invocation invocation, StubList.Entry best) {
+        Automaton current = getAutomaton();
+        long searchStamp = searches.incrementAndGet();
+        int valueLength = value.length();
+        int state = 0;
+        for (int index = 0; index < valueLength; index++) {
+            char c = fold(value.charAt(index));
+            int nextState = current.transition(state, c);
+            while (nextState < 0 && state != 0) {
+                state = current.failures[state];
+                nextState = current.transition(state, c);
+            }
+            state = (nextState < 0) ? 0 : nextState;
+
+            int output = (current.outputs[state] != null) ? state : current.outputLinks[state];
+            while (output >= 0) {
+                for (Target target : current.outputs[output]) {
+                    if (target.stamp != searchStamp && target.accepts(index + 1, valueLength)) {
+                        target.stamp = searchStamp;
+                        best = StubList.searchYoungerEntry(target.entries, invocation, best);
+                    }
+                }
+                output = current.outputLinks[output];
+            }
+        }
+        return best;
+    }
+}
@@ -46,7 +46,7 @@ public final class Stub extends InvocationChecker implements
     protected Stub(Object mock, Method method) {
         super(mock, method);
         logger.trace("Stub", "method=", method);
-        invocationResult = InvocationResult.getDefaultResultForClass(method.getReturnType());
+        invocationResult = getDefaultResult();
     }
 
     @Override
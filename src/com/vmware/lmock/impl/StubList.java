@@ -0,0 +1,330 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.impl;
+
+import com.vmware.lmock.checker.Checker;
+import com.vmware.lmock.checker.ComparableChecker;
+import com.vmware.lmock.checker.StringChecker;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The list of stubs defined for one method of one mock.
+ *
+ * <p>
+ * When several stubs match an invocation, the youngest one prevails. Finding
+ * it by checking the stubs one after the other becomes expensive when there
+ * are many of them, typically when they only differ by the values of their
+ * arguments.
+ * </p>
+ *
+ * <p>
+ * So the list indexes every stub expecting a given value for one of its
+ * arguments (i.e. a simple object checker), by the position and the value of
+ * this argument. Only the values with a stable hash code are indexed (see
+ * <code>SimpleObjectChecker.isHashable</code>). If a stub expects several
+ * such values, only the leftmost one is used. An invocation then only checks the stubs indexed with its own
+ * argument values, plus the stubs that could not be indexed.
+ * </p>
+ *
+ * <p>
+ * Stubs expecting no such value, but comparing a string argument with a
+ * reference string (equality, containment, prefix or suffix), are indexed by
+ * the position of this argument in a string stub index, which finds the
+ * candidates in one pass over the argument value. The remaining stubs
+ * expecting an argument within a range of values are indexed in a range stub
+ * index, which only visits the ranges containing the argument value.
+ * </p>
+ *
+ * <p>
+ * Each stub gets a sequence number when registered, so that the youngest
+ * matching stub can be selected among these different sets.
+ * </p>
+ *
+ * <p>
+ * The list is searched without lock, while registrations are serialized by
+ * the owning stub map.
+ * </p>
+ */
+class StubList {
+    /** Logs the stub list activity. */
+    private static final Logger logger = Logger.get(StubList.class);
+    /** Key representing the <code>null</code> value in the indexes. */
+    private static final Object NULL_KEY = new Object();
+
+    /**
+     * A stub, along with its registration sequence number.
+     */
+    static final class Entry {
+        private final int sequence;
+        private final Stub stub;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param sequence
+         *            the registration sequence number
+         * @param stub
+         *            the registered stub
+         */
+        Entry(int sequence, Stub stub) {
+            this.sequence = sequence;
+            this.stub = stub;
+        }
+    }
+    /** Number of registered stubs. */
+    private int size;
+    /** Per argument position, the stubs indexed by expected value. */
+    private final AtomicReferenceArray<ConcurrentHashMap<Object, List<Entry>>> indexes;
+    /** Per argument position, the stubs indexed by expected string. */
+    private final AtomicReferenceArray<StringStubIndex> stringIndexes;
+    /** Per argument position, the stubs indexed by expected range. */
+    private final AtomicReferenceArray<RangeStubIndex> rangeIndexes;
+    /** The stubs that are not indexed. */
+    private final List<Entry> otherStubs = new CopyOnWriteArrayList<Entry>();
+
+    /**
+     * Creates a new list.
+     *
+     * @param argumentCount
+     *            the number of arguments of the related method
+     */
+    StubList(int argumentCount) {
+        indexes = new AtomicReferenceArray<ConcurrentHashMap<Object, List<Entry>>>(argumentCount);
+        stringIndexes = new AtomicReferenceArray<StringStubIndex>(argumentCount);
+        rangeIndexes = new AtomicReferenceArray<RangeStubIndex>(argumentCount);
+    }
+
+    /**
+     * Gets the index key of a value.
+     *
+     * @param value
+     *            the value, can be <code>null</code>
+     * @return The key.
+     */
+    private static Object keyOf(Object value) {
+        if (value == null) {
+            return NULL_KEY;
+        } else {
+            return Mock.getObjectOrMock(value);
+        }
+    }
+
+    /**
+     * Gets the position of the argument used to index a stub.
+     *
+     * @param stub
+     *            the stub
+     * @return The argument position, -1 if the stub cannot be indexed.
+     */
+    private int getIndexedPosition(Stub stub) {
+        int count = Math.min(stub.getArgumentCount(), indexes.length());
+        for (int position = 0; position < count; position++) {
+            Checker<Object> checker = stub.getArgumentChecker(position);
+            if (checker instanceof SimpleObjectChecker
+              && ((SimpleObjectChecker) checker).isHashable()) {
+                return position;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Gets the position of the argument used to index a stub by expected
+     * string.
+     *
+     * @param stub
+     *            the stub
+     * @return The argument position, -1 if the stub cannot be indexed.
+     */
+    private int getStringIndexedPosition(Stub stub) {
+        int count = Math.min(stub.getArgumentCount(), stringIndexes.length());
+        for (int position = 0; position < count; position++) {
+            Checker<?> checker = stub.getArgumentChecker(position);
+            if (checker instanceof StringChecker
+              && StringStubIndex.canIndex((StringChecker) checker)) {
+                return position;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Registers a stub in the string index of an argument position.
+     *
+     * @param position
+     *            the argument position
+     * @param entry
+     *            the stub entry
+     */
+    private void addToStringIndex(int position, Entry entry) {
+        StringStubIndex index = stringIndexes.get(position);
+        if (index == null) {
+            index = new StringStubIndex();
+            stringIndexes.set(position, index);
+        }
+        Checker<?> checker = entry.stub.getArgumentChecker(position);
+        index.add((StringChecker) checker, entry);
+    }
+
+    /**
+     * Gets the position of the argument used to index a stub by expected
+     * range.
+     *
+     * @param stub
+     *            the stub
+     * @return The argument position, -1 if the stub cannot be indexed.
+     */
+    private int getRangeIndexedPosition(Stub stub) {
+        int count = Math.min(stub.getArgumentCount(), rangeIndexes.length());
+        for (int position = 0; position < count; position++) {
+            if (RangeStubIndex.canIndex(stub.getArgumentChecker(position))) {
+                return position;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Registers a stub in the range index of an argument position.
+     *
+     * @param position
+     *            the argument position
+     * @param entry
+     *            the stub entry
+     */
+    private void addToRangeIndex(int position, Entry entry) {
+        RangeStubIndex index = rangeIndexes.get(position);
+        if (index == null) {
+            index = new RangeStubIndex();
+            rangeIndexes.set(position, index);
+        }
+        Checker<?> checker = entry.stub.getArgumentChecker(position);
+        index.add((ComparableChecker<?>) checker, entry);
+    }
+
+    /**
+     * Registers a new stub, younger than the previous ones.
+     *
+     * @param stub
+     *            the registered stub
+     */
+    void add(Stub stub) {
+        Entry entry = new Entry(size++, stub);
+        int position = getIndexedPosition(stub);
+        if (position < 0) {
+            position = getStringIndexedPosition(stub);
+            if (position >= 0) {
+                addToStringIndex(position, entry);
+                return;
+            }
+
+            position = getRangeIndexedPosition(stub);
+            if (position >= 0) {
+                addToRangeIndex(position, entry);
+            } else {
+                otherStubs.add(entry);
+            }
+            return;
+        }
+
+        ConcurrentHashMap<Object, List<Entry>> index = indexes.get(position);
+        if (index == null) {
+            index = new ConcurrentHashMap<Object, List<Entry>>();
+            indexes.set(position, index);
+        }
+
+        SimpleObjectChecker checker = (SimpleObjectChecker) stub.getArgumentChecker(position);
+        Object key = keyOf(checker.getReferenceObject());
+        List<Entry> entries = index.get(key);
+        if (entries == null) {
+            entries = new CopyOnWriteArrayList<Entry>();
+            index.put(key, entries);
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * Searches a list of entries for a stub younger than a given one and
+     * matching an invocation.
+     *
+     * @param entries
+     *            the searched entries (can be <code>null</code>)
+     * @param invocation
+     *            the checked invocation
+     * @param best
+     *            the youngest matching entry found so far, <code>null</code>
+     *            if none
+     * @return The youngest matching entry.
+     */
+    static Entry searchYoungerEntry(List<Entry> entries, Invocation invocation, Entry best) {
+        if (entries == null) {
+            return best;
+        }
+
+        // Give the priority to the younger stubs.
+        for (int index = entries.size() - 1; index >= 0; index--) {
+            Entry entry = entries.get(index);
+            if (best != null && entry.sequence <= best.sequence) {
+                break;
+            }
+
+            logger.trace("searchYoungerEntry", "checking stub", entry.stub, "against invocation", invocation);
+            if (entry.stub.valueIsCompatibleWith(invocation)) {
+                logger.trace("searchYoungerEntry", "stub matches");
+                return entry;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Searches the youngest stub matching an invocation.
+     *
+     * @param invocation
+     *            the checked invocation
+     * @return The fetched stub, if found, <code>null</code> otherwise.
+     */
+    Stub search(Invocation invocation) {
+        Entry best = null;
+        Object[] arguments = invocation.getArgs();
+        if (arguments != null) {
+            int count = Math.min(arguments.length, indexes.length());
+            for (int position = 0; position < count; position++) {
+                ConcurrentHashMap<Object, List<Entry>> index = indexes.get(position);
+                if (index != null) {
+                    best = searchYoungerEntry(index.get(keyOf(arguments[position])), invocation, best);
+                }
+
+                StringStubIndex stringIndex = stringIndexes.get(position);
+                if (stringIndex != null && arguments[position] instanceof String) {
+                    best = stringIndex.search((String) arguments[position], invocation, best);
+                }
+
+                RangeStubIndex rangeIndex = rangeIndexes.get(position);
+                if (rangeIndex != null && arguments[position] instanceof Comparable) {
+                    best = rangeIndex.search((Comparable<?>) arguments[position], invocation, best);
+                }
+            }
+        }
+
+        best = searchYoungerEntry(otherStubs, invocation, best);
+        return (best == null) ? null : best.stub;
+    }
+
+    @Override
+    public String toString() {
+        return "stubs(" + size + ")";
+    }
+}
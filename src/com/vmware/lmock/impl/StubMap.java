@@ -7,11 +7,9 @@
  * ************************************************************************** */
 package com.vmware.lmock.impl;
 
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A map of stubs.
@@ -19,45 +17,60 @@ import java.util.Set;
  * <p>
  * Stubs are registered by the <code>register</code> method. It is then able to
  * check whether an invocation may match one or several stubs, using the mock
- * and the method name (<code>search</code>).
+ * and the method (<code>search</code>).
+ * </p>
+ *
+ * <p>
+ * The stubs of a mock are stored in a table indexed by the ordinal of their
+ * method in the mocked class (see <code>MethodTable</code>). So once the mock
+ * is found, getting the stubs of a method is a simple array access.
+ * </p>
+ *
+ * <p>
+ * The map is searched without any lock by the invoking threads, while new
+ * stubs may be registered when appending stubs to an ongoing story. So the
+ * underlying maps, tables and lists are concurrent structures.
  * </p>
  */
 class StubMap {
-    /** Per-mock map of per-method name map of stubs. */
-    private final HashMap<Mock, HashMap<Method, List<Stub>>> map = new HashMap<Mock, HashMap<Method, List<Stub>>>();
+    /** Per-mock table of stubs, indexed by method ordinal. */
+    private final ConcurrentHashMap<Mock, AtomicReferenceArray<StubList>> map =
+      new ConcurrentHashMap<Mock, AtomicReferenceArray<StubList>>();
 
     /**
      * Searches for stubs that may be verified by an invocation.
      *
      * <p>
      * The returned list provides all the stubs matching the given mock and
-     * method, from the older to the younger in terms of registration.
+     * method.
      * </p>
      *
      * @param invocation
      *            the checked invocation
      * @return The list of fetched stubs, <code>null</code> if not found.
      */
-    protected List<Stub> search(Invocation invocation) {
-        HashMap<Method, List<Stub>> methodMap = map.get(invocation.getMock());
-        if (methodMap != null) {
-            return methodMap.get(invocation.getMethod());
+    protected StubList search(Invocation invocation) {
+        AtomicReferenceArray<StubList> stubTable = map.get(invocation.getMock());
+        if (stubTable != null) {
+            int ordinal = invocation.getMethodOrdinal();
+            return (ordinal < 0) ? null : stubTable.get(ordinal);
         } else {
             return null;
         }
     }
 
     /**
-     * Creates and registers a new map for a given mock.
+     * Creates and registers a new table for a given mock.
      *
      * @param mock
      *            the mock
-     * @return The created map.
+     * @return The created table.
      */
-    private HashMap<Method, List<Stub>> createMapForMock(Mock mock) {
-        HashMap<Method, List<Stub>> newMap = new HashMap<Method, List<Stub>>();
-        map.put(mock, newMap);
-        return newMap;
+    private AtomicReferenceArray<StubList> createTableForMock(Mock mock) {
+        AtomicReferenceArray<StubList> newTable =
+          new AtomicReferenceArray<StubList>(mock.getMethodTable().size());
+        map.put(mock, newTable);
+        return newTable;
     }
 
     /**
@@ -71,21 +84,43 @@ class StubMap {
      * @param stub
      *            the registered stub
      */
-    protected void register(Stub stub) {
-        HashMap<Method, List<Stub>> methodMap = map.get(stub.getProxy());
-        if (methodMap == null) {
-            methodMap = createMapForMock(stub.getProxy());
+    protected synchronized void register(Stub stub) {
+        Mock mock = stub.getProxy();
+        AtomicReferenceArray<StubList> stubTable = map.get(mock);
+        if (stubTable == null) {
+            stubTable = createTableForMock(mock);
         }
 
-        List<Stub> stubList = methodMap.get(stub.getMethod());
+        int ordinal = mock.getMethodTable().ordinalOf(stub.getMethod());
+        StubList stubList = stubTable.get(ordinal);
         if (stubList == null) {
-            stubList = new ArrayList<Stub>();
-            methodMap.put(stub.getMethod(), stubList);
+            stubList = new StubList(stub.getArgumentCount());
+            stubTable.set(ordinal, stubList);
         }
 
         stubList.add(stub);
     }
 
+    /**
+     * Tells which methods of <code>Object</code> are stubbed for a mock.
+     *
+     * @param mock
+     *            the mock
+     * @return The ordinals of the stubbed methods, as a bit mask.
+     */
+    protected int getStubbedObjectMethods(Mock mock) {
+        int methods = 0;
+        AtomicReferenceArray<StubList> stubTable = map.get(mock);
+        if (stubTable != null) {
+            for (int ordinal = 0; ordinal < MethodTable.NR_OBJECT_METHODS; ordinal++) {
+                if (stubTable.get(ordinal) != null) {
+                    methods |= 1 << ordinal;
+                }
+            }
+        }
+        return methods;
+    }
+
     /**
      * @return The list of mocks to which a stub was mapped.
      */
@@ -0,0 +1,199 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.impl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A group of expectations that may be satisfied in any order.
+ *
+ * <p>
+ * The members of a group are consecutive in the expectation list of a
+ * scenario. When the story reaches the first member, the group is started
+ * (<code>start</code>) and every member is then a candidate for the subsequent
+ * invocations, until an invocation matches none of them. At this point, the
+ * story can go beyond the group if and only if every member is satisfied.
+ * </p>
+ *
+ * <p>
+ * When several members match an invocation, the first declared one that did
+ * not reach its occurrence limit is selected.
+ * </p>
+ *
+ * <p>
+ * Since a group may contain a large number of expectations, the members are
+ * indexed by mock and method ordinal, so that an invocation is only checked
+ * against the members expecting the same method. The satisfied members are
+ * tracked in a bit set, which tells immediately whether the group can end.
+ * </p>
+ *
+ * <p>
+ * A group is not thread safe: it is driven by the owning story processor.
+ * </p>
+ */
+final class UnorderedGroup {
+    /** The members of this group, in the order they were declared. */
+    private final Expectation[] members;
+    /** Per mock, per method ordinal, the members expecting that method. */
+    private final Map<Mock, Map<Integer, List<Integer>>> index =
+      new IdentityHashMap<Mock, Map<Integer, List<Integer>>>();
+    /** The reports of the members for the ongoing story. */
+    private final ExpectationReport[] reports;
+    /** The members which occurrences are currently satisfied. */
+    private final BitSet satisfied;
+
+    /**
+     * Creates a new group and assigns it to its members.
+     *
+     * @param members
+     *            the members of the group, in the order they were declared
+     */
+    UnorderedGroup(Expectation... members) {
+        this.members = members;
+        reports = new ExpectationReport[members.length];
+        satisfied = new BitSet(members.length);
+        for (int position = 0; position < members.length; position++) {
+            members[position].setGroup(this);
+            getIndexEntry(members[position].getProxy(),
+              members[position].getMethodOrdinal()).add(position);
+        }
+    }
+
+    /**
+     * Gets or creates the index entry of a method.
+     *
+     * @param mock
+     *            the mock
+     * @param ordinal
+     *            the method ordinal
+     * @return The list of members expecting that method.
+     */
+    private List<Integer> getIndexEntry(Mock mock, int ordinal) {
+        Map<Integer, List<Integer>> methods = index.get(mock);
+        if (methods == null) {
+            methods = new HashMap<Integer, List<Integer>>();
+            index.put(mock, methods);
+        }
+
+        List<Integer> positions = methods.get(ordinal);
+        if (positions == null) {
+            positions = new ArrayList<Integer>();
+            methods.put(ordinal, positions);
+        }
+        return positions;
+    }
+
+    /**
+     * Gets the members that may match an invocation.
+     *
+     * @param invocation
+     *            the invocation
+     * @return The positions of the candidates, <code>null</code> if none.
+     */
+    private List<Integer> getCandidates(Invocation invocation) {
+        Map<Integer, List<Integer>> methods = index.get(invocation.getMock());
+        return (methods == null) ? null : methods.get(invocation.getMethodOrdinal());
+    }
+
+    /** @return The number of members of this group. */
+    int size() {
+        return members.length;
+    }
+
+    /**
+     * Starts the group, so that every member can be invoked.
+     *
+     * @param tracker
+     *            the tracker of the story, receiving a report for each member
+     */
+    void start(StoryTracker tracker) {
+        satisfied.clear();
+        for (int position = 0; position < members.length; position++) {
+            members[position].getOccurrences().reset();
+            reports[position] = tracker.addExpectationReport(members[position]);
+            satisfied.set(position, members[position].getOccurrences().canEndNow());
+        }
+    }
+
+    /** Resets the occurrences of every member when leaving the group. */
+    void reset() {
+        for (Expectation member : members) {
+            member.getOccurrences().reset();
+        }
+    }
+
+    /**
+     * Tells whether a member of this group may satisfy an invocation,
+     * regardless of the occurrences.
+     *
+     * @param invocation
+     *            the checked invocation
+     * @return <code>true</code> if one member matches the invocation.
+     */
+    boolean accepts(Invocation invocation) {
+        List<Integer> candidates = getCandidates(invocation);
+        if (candidates != null) {
+            for (int position : candidates) {
+                if (members[position].valueIsCompatibleWith(invocation)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tries to satisfy an invocation with one member of the group.
+     *
+     * <p>
+     * If a member is found, its occurrences and report are updated.
+     * </p>
+     *
+     * @param invocation
+     *            the invocation
+     * @return The invocation result, <code>null</code> if no member can
+     *         satisfy the invocation.
+     */
+    InvocationResultProvider invoke(Invocation invocation) {
+        List<Integer> candidates = getCandidates(invocation);
+        if (candidates == null) {
+            return null;
+        }
+
+        for (int position : candidates) {
+            Expectation member = members[position];
+            if (!member.getOccurrences().hasReachedLimit()
+              && member.valueIsCompatibleWith(invocation)) {
+                InvocationResultProvider result = member.getResult();
+                reports[position].record();
+                satisfied.set(position, member.getOccurrences().canEndNow());
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /** @return <code>true</code> if every member of the group is satisfied. */
+    boolean canEndNow() {
+        return satisfied.nextClearBit(0) >= members.length;
+    }
+
+    /**
+     * @return The first declared member that is not satisfied yet,
+     *         <code>null</code> if none.
+     */
+    Expectation getFirstUnsatisfiedExpectation() {
+        int position = satisfied.nextClearBit(0);
+        return (position < members.length) ? members[position] : null;
+    }
+}
@@ -28,14 +28,21 @@ import com.vmware.lmock.exception.SchemerException;
  * </ul>
  *
  * <p>
- * The provider is maintained as a singleton, ensuring a safe life-cycle in the directive definition.
+ * There is one provider per thread, ensuring a safe life-cycle in the directive definition: a directive is
+ * completely defined by one thread, while other threads may define their own ones.
  * </p>
  */
 final class ArgumentSpecificationProvider {
     /**  The maintained object. */
     private HasArgumentSpecificationClauses builder;
-    /** The unique argument specification provider. */
-    private static final ArgumentSpecificationProvider provider = new ArgumentSpecificationProvider();
+    /** The argument specification provider of each thread. */
+    private static final ThreadLocal<ArgumentSpecificationProvider> providers =
+      new ThreadLocal<ArgumentSpecificationProvider>() {
+          @Override
+          protected ArgumentSpecificationProvider initialValue() {
+              return new ArgumentSpecificationProvider();
+          }
+      };
 
     /**
      * Specifies a new builder.
@@ -60,9 +67,9 @@ final class ArgumentSpecificationProvider {
         }
     }
 
-    /** @return The argument specification provider. */
+    /** @return The argument specification provider of the current thread. */
     private static ArgumentSpecificationProvider getProvider() {
-        return provider;
+        return providers.get();
     }
 
     /**
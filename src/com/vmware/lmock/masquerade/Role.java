@@ -142,6 +142,37 @@ public class Role implements HasDirectiveClauses, HasArgumentSpecificationClause
         this.storyManager = null;
     }
 
+    /**
+     * Begins a batch of directives, registered into the story by
+     * <code>commitBatch</code>.
+     *
+     * @throws SchemerException
+     *             No story ongoing for now...
+     */
+    void beginBatch() {
+        validateRequestOrThrow();
+        factory.beginBatch();
+    }
+
+    /**
+     * Registers the directives built since <code>beginBatch</code> into the
+     * story.
+     *
+     * @return <code>false</code> if the directives were dropped because a
+     *         nested batch was aborted.
+     */
+    boolean commitBatch() {
+        return factory.commitBatch();
+    }
+
+    /**
+     * Forgets the directives built since <code>beginBatch</code>, as well as
+     * the ones of the enclosing batches.
+     */
+    void abortBatch() {
+        factory.abortBatch();
+    }
+
     /**
      * @return An arbitrary actor playing this role.
      */
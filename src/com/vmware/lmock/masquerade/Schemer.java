@@ -28,12 +28,20 @@ import java.util.List;
  * Defines the whole test as a masquerade.
  *
  * <p>
- * The schemer is a unique object controlling the construction and execution of
+ * The schemer is the object controlling the construction and execution of
  * masquerades. It allows to create expectations and stubs on the fly while
  * actually following the story.
  * </p>
  *
  * <p>
+ * There is one schemer per controlling thread, i.e. per thread invoking
+ * <code>begin</code> and <code>end</code>: the static methods always refer to
+ * the masquerade of the current thread. Hence, independent masquerades can be
+ * run in parallel by different threads. The other threads taking part in a
+ * masquerade must use explicit roles.
+ * </p>
+ *
+ * <p>
  * The schemer activity always start by an invocation to <code>begin</code> that
  * resets the old context of execution (if any) and prepares to execute a new
  * masquerade. The masquerade may terminate with an invocation to
@@ -62,14 +70,25 @@ import java.util.List;
  * The schemer also implements the <code>append</code> methods, to include a
  * scenario or a set of stubs into the ongoing masquerade.
  * </p>
+ *
+ * <p>
+ * When a large number of directives must be specified at once, the
+ * specification can be wrapped into a <code>batch</code>, so that the
+ * directives are registered into the story in a single pass.
+ * </p>
  */
 public final class Schemer {
     /** Registers and controls a story on the fly. */
     private final StoryManager storyManager;
     /** Role associated to the default actor defined by the story manager. */
     private Role defaultRole;
-    /** The schemer singleton. */
-    private static final Schemer schemer = new Schemer();
+    /** The schemer of each controlling thread. */
+    private static final ThreadLocal<Schemer> schemers = new ThreadLocal<Schemer>() {
+        @Override
+        protected Schemer initialValue() {
+            return new Schemer();
+        }
+    };
     /** List of roles contributing to the masquerade. */
     private List<Role> roles = new ArrayList<Role>();
 
@@ -113,14 +132,19 @@ public final class Schemer {
         storyManager = new StoryManager();
     }
 
+    /** @return The schemer of the current thread. */
+    private static Schemer schemer() {
+        return schemers.get();
+    }
+
     /** @return The story manager. */
     private static StoryManager storyManager() {
-        return schemer.getStoryManager();
+        return schemer().getStoryManager();
     }
 
     /** @return The list of roles defined when constructing this. */
     private static List<Role> roles() {
-        return schemer.getRoles();
+        return schemer().getRoles();
     }
 
     /**
@@ -133,6 +157,7 @@ public final class Schemer {
      * @return The default role defined for the testing thread.
      */
     private static Role getDefaultRoleOrThrow() {
+        Schemer schemer = schemer();
         if (schemer.hasDefaultRole()) {
             return schemer.getDefaultRole();
         } else {
@@ -142,7 +167,7 @@ public final class Schemer {
 
     /** Cleans the default role object managed by the schemer. */
     private static void cleanupDefaultRole() {
-        schemer.invalidateDefaultRole();
+        schemer().invalidateDefaultRole();
     }
 
     /**
@@ -154,6 +179,7 @@ public final class Schemer {
      * </p>
      */
     private static void createDefaultRoleIfNotYetFound() {
+        Schemer schemer = schemer();
         if (!schemer.hasDefaultRole()) {
             // Note: we do not explicitly need a story to get the default actor,
             // since the story was designed to automatically merge this default
@@ -179,6 +205,7 @@ public final class Schemer {
      *            the inspected role
      */
     private static void assignDefaultRoleIfMatchingActorFound(Role role) {
+        Schemer schemer = schemer();
         if (!schemer.hasDefaultRole()) {
             for (Actor actor : role) {
                 if (actor.getChecker().valueIsCompatibleWith(Thread.currentThread())) {
@@ -269,10 +296,75 @@ public final class Schemer {
 
     /**
      * Verifies that the ongoing story is complete.
+     *
+     * <p>
+     * The schemer of the current thread is then dropped, so that a thread
+     * living after the masquerade (e.g. a pooled thread) does not keep the
+     * story alive.
+     * </p>
      */
     public static void end() {
-        unregisterRoles();
-        storyManager().endStory();
+        try {
+            unregisterRoles();
+            storyManager().endStory();
+        } finally {
+            schemers.remove();
+        }
+    }
+
+    /**
+     * Specifies a batch of directives, registered at once into the masquerade.
+     *
+     * <p>
+     * The directives created by the specification, for the default role as
+     * well as for the other roles of the masquerade, are accumulated and
+     * registered when the specification is complete. Hence, they do not apply
+     * to the invocations made during the specification. If the specification
+     * throws an exception, the directives of the batch are dropped.
+     * </p>
+     *
+     * <p>
+     * Batches can be nested. The failure of a nested batch drops the
+     * directives of the enclosing batches too, even if the exception is
+     * caught by the enclosing specifications: the outermost batch then throws
+     * an exception once complete.
+     * </p>
+     *
+     * @param specification
+     *            creates the directives of the batch
+     * @throws SchemerException
+     *             A nested batch failed, the directives of the batch are
+     *             dropped.
+     */
+    public static void batch(Runnable specification) {
+        // Throws an exception if no masquerade is ongoing.
+        getDefaultRoleOrThrow();
+        List<Role> batchRoles = new ArrayList<Role>(roles());
+        for (Role role : batchRoles) {
+            role.beginBatch();
+        }
+
+        boolean complete = false;
+        boolean committed = true;
+        try {
+            specification.run();
+            for (Role role : batchRoles) {
+                if (!role.commitBatch()) {
+                    committed = false;
+                }
+            }
+            complete = true;
+        } finally {
+            if (!complete) {
+                for (Role role : batchRoles) {
+                    role.abortBatch();
+                }
+            }
+        }
+
+        if (!committed) {
+            throw new SchemerException("a nested batch failed, the directives of the batch are dropped");
+        }
     }
 
     /**
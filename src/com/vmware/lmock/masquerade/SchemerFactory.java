@@ -38,6 +38,13 @@ import com.vmware.lmock.impl.Stubs;
  * helpers of the schemer). For that reason, this method is static and
  * requires a specific cleaning procedure, provided by <code>cleanup</code>.
  * </p>
+ *
+ * <p>
+ * By default, each directive is registered into the ongoing story as soon as
+ * it is complete. Within a batch (<code>beginBatch</code>), the directives
+ * are accumulated into a single scenario and set of stubs, registered at once
+ * when the batch is committed (<code>commitBatch</code>).
+ * </p>
  */
 class SchemerFactory implements InvocationCheckerClosureHandler,
   HasDirectiveClauses, HasWhenClause, HasExpectationClauses {
@@ -51,6 +58,14 @@ class SchemerFactory implements InvocationCheckerClosureHandler,
     private Stubs temporaryStubs;
     /** Called back to register the built directive into the ongoing story. */
     private final HasAppendClauses controller;
+    /** Accumulates the expectations of the ongoing batch, if any. */
+    private Scenario batchScenario;
+    /** Accumulates the stubs of the ongoing batch, if any. */
+    private Stubs batchStubs;
+    /** Number of nested batches begun and not yet committed. */
+    private int batchDepth = 0;
+    /** Asserted when a nested batch failed, dropping the whole batch. */
+    private boolean batchIsAborted = false;
 
     /**
      * Creates a new builder.
@@ -67,6 +82,11 @@ class SchemerFactory implements InvocationCheckerClosureHandler,
         this.controller = controller;
     }
 
+    /** @return <code>true</code> if the directives are accumulated into a batch. */
+    private boolean isBatching() {
+        return batchDepth > 0;
+    }
+
     /** @return <code>true</code> if the built element has occurrences. */
     private boolean hasOccurrences() {
         return occurrences != null;
@@ -97,14 +117,90 @@ class SchemerFactory implements InvocationCheckerClosureHandler,
      */
     protected void cleanup() {
         reset();
+        dropBatch();
         ArgumentSpecificationProvider.cleanup();
     }
 
+    /**
+     * Begins a batch: the directives built from now on are registered into
+     * the ongoing story when the batch is committed.
+     *
+     * <p>
+     * Batches can be nested: the directives are registered when the
+     * outermost batch is committed.
+     * </p>
+     */
+    protected void beginBatch() {
+        if (!isBatching()) {
+            batchScenario = new Scenario(false); // don't clear the story track
+            batchStubs = new Stubs();
+            batchIsAborted = false;
+        }
+        batchDepth++;
+    }
+
+    /**
+     * Commits a batch begun by <code>beginBatch</code>.
+     *
+     * <p>
+     * When committing the outermost batch, registers all the accumulated
+     * directives into the ongoing story, unless a nested batch was aborted.
+     * </p>
+     *
+     * @return <code>false</code> if the outermost batch was committed after a
+     *         nested batch was aborted: the directives are dropped.
+     */
+    protected boolean commitBatch() {
+        if (!isBatching() || --batchDepth > 0) {
+            return true;
+        }
+
+        Scenario scenario = batchScenario;
+        Stubs stubs = batchStubs;
+        boolean aborted = batchIsAborted;
+        dropBatch();
+        if (aborted) {
+            return false;
+        }
+        controller.append(scenario);
+        controller.append(stubs);
+        return true;
+    }
+
+    /**
+     * Aborts a batch begun by <code>beginBatch</code>.
+     *
+     * <p>
+     * The directives of the enclosing batches are dropped as well: they are
+     * still accumulated, but not registered when the outermost batch is
+     * committed.
+     * </p>
+     */
+    protected void abortBatch() {
+        if (isBatching()) {
+            batchIsAborted = true;
+            if (--batchDepth == 0) {
+                dropBatch();
+            }
+        }
+    }
+
+    /** Forgets the ongoing batch and all its directives. */
+    private void dropBatch() {
+        batchScenario = null;
+        batchStubs = null;
+        batchDepth = 0;
+        batchIsAborted = false;
+    }
+
     /**
      * Calls back the story controller to register the lastly built directive.
      */
     private void registerToController() {
-        if (temporaryScenario != null) {
+        if (isBatching()) {
+            // Will be registered with the whole batch.
+            return;
+        } else if (temporaryScenario != null) {
             controller.append(temporaryScenario);
         } else {
             controller.append(temporaryStubs);
@@ -158,7 +254,11 @@ class SchemerFactory implements InvocationCheckerClosureHandler,
      *            The mock object for which we create an expectation.
      */
     private <T> void prepareToBuildExpectation(T mock) {
-        temporaryScenario = new Scenario(false); // don't clear the story track
+        if (isBatching()) {
+            temporaryScenario = batchScenario;
+        } else {
+            temporaryScenario = new Scenario(false); // don't clear the story track
+        }
         temporaryScenario.expect(mock, this);
         ArgumentSpecificationProvider.setArgumentSpecificationBuilder(temporaryScenario);
     }
@@ -175,7 +275,11 @@ class SchemerFactory implements InvocationCheckerClosureHandler,
      *            The mock object for which we create an expectation.
      */
     private <T> void prepareToBuildStub(T mock) {
-        temporaryStubs = new Stubs();
+        if (isBatching()) {
+            temporaryStubs = batchStubs;
+        } else {
+            temporaryStubs = new Stubs();
+        }
         temporaryStubs.stub(mock, this);
         ArgumentSpecificationProvider.setArgumentSpecificationBuilder(temporaryStubs);
     }
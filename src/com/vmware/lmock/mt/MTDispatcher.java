@@ -30,6 +30,14 @@ import com.vmware.lmock.exception.ThreadNotFoundException;
  * to match the thread with one of the checker defined during the population
  * phase.
  * </p>
+ * <p>
+ * Once a thread is associated with data, this association does not change
+ * anymore. So the dispatcher caches it in a thread local binding, which allows
+ * the subsequent requests of this thread to get their data without any lock.
+ * The bindings are stamped with a generation number: calling
+ * <code>invalidateBindings</code> forces every thread to go through the
+ * regular lookup on its next request.
+ * </p>
  *
  * @param <T>
  *            the type of data associated to threads
@@ -39,6 +47,36 @@ public class MTDispatcher<T> {
     private final ThreadList<T> knownThreads = new ThreadList<T>();
     /** The list of checkers. */
     private final ThreadMatcher<T> matcher = new ThreadMatcher<T>();
+    /** The current generation of thread bindings. */
+    private volatile int generation;
+    /** The binding of the current thread, if any. */
+    private final ThreadLocal<Binding<T>> currentBinding = new ThreadLocal<Binding<T>>();
+
+    /**
+     * Association of a thread with its data, valid for a given generation.
+     *
+     * @param <T>
+     *            the type of data associated to threads
+     */
+    private static final class Binding<T> {
+        /** The generation in which this binding was created. */
+        private final int generation;
+        /** The data associated to the thread. */
+        private final T data;
+
+        /**
+         * Creates a new binding.
+         *
+         * @param generation
+         *            the current generation of bindings
+         * @param data
+         *            the thread data
+         */
+        Binding(int generation, T data) {
+            this.generation = generation;
+            this.data = data;
+        }
+    }
 
     /**
      * Registers a checker for a given thread, along with data.
@@ -125,7 +163,30 @@ public class MTDispatcher<T> {
      * @throws ThreadNotFoundException
      *            The current thread is unknown by the system.
      */
-    public synchronized T getCurrentData() {
-        return getThreadData(Thread.currentThread());
+    public T getCurrentData() {
+        Binding<T> binding = currentBinding.get();
+        if (binding != null && binding.generation == generation) {
+            return binding.data;
+        }
+
+        synchronized (this) {
+            // Read the generation first, so that an invalidation occurring
+            // during the lookup is not lost.
+            int currentGeneration = generation;
+            T data = getThreadData(Thread.currentThread());
+            currentBinding.set(new Binding<T>(currentGeneration, data));
+            return data;
+        }
+    }
+
+    /**
+     * Invalidates the cached bindings of all the threads.
+     *
+     * <p>
+     * The threads will look up their data again on their next request.
+     * </p>
+     */
+    public synchronized void invalidateBindings() {
+        generation++;
     }
 }
@@ -10,8 +10,12 @@ package com.vmware.lmock.mt;
 import com.vmware.lmock.checker.ThreadChecker;
 import com.vmware.lmock.exception.ThreadNotFoundException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Fetches threads with data.
@@ -29,6 +33,13 @@ import java.util.List;
  * the list whenever they recognized one thread. This allows to provide multiple
  * checkers with similar properties without any confusion.
  * </p>
+ * <p>
+ * When several checkers recognize a thread, the first registered one wins.
+ * Since there may be hundreds of checkers, those bound to a specific thread
+ * or to a specific thread name are indexed, and only the other ones are
+ * tried one after the other. Each checker gets a sequence number at
+ * registration time, so that we can still tell which one came first.
+ * </p>
  *
  * @param <T>
  *            the type of data associated to threads
@@ -38,6 +49,7 @@ class ThreadMatcher<T> {
      * Association of checkers with thread data.
      */
     private class MatcherData {
+        private final int sequence;
         private final ThreadChecker checker;
         private final T data;
         private final ThreadMatcherNotificationHandler callback;
@@ -45,6 +57,8 @@ class ThreadMatcher<T> {
         /**
          * Creates a new pair of data.
          *
+         * @param sequence
+         *            the registration sequence number
          * @param checker
          *            the checker
          * @param data
@@ -53,13 +67,19 @@ class ThreadMatcher<T> {
          *            called back when the matching thread is found
          *            (<code>null</code> if none)
          */
-        MatcherData(ThreadChecker checker, T data,
+        MatcherData(int sequence, ThreadChecker checker, T data,
           ThreadMatcherNotificationHandler callback) {
+            this.sequence = sequence;
             this.checker = checker;
             this.data = data;
             this.callback = callback;
         }
 
+        /** @return The registration sequence number of this. */
+        int getSequence() {
+            return sequence;
+        }
+
         /** @return The checker enclosed by this. */
         ThreadChecker getChecker() {
             return checker;
@@ -82,9 +102,75 @@ class ThreadMatcher<T> {
             }
         }
     }
-    /** The list of checkers. */
+    /** The sequence number of the next registered checker. */
+    private int nextSequence;
+    /** The checkers matching one specific thread, indexed by thread. */
+    private final Map<Thread, LinkedList<MatcherData>> threadIndex =
+      new IdentityHashMap<Thread, LinkedList<MatcherData>>();
+    /** The checkers matching the threads by name, indexed by name. */
+    private final Map<String, LinkedList<MatcherData>> nameIndex =
+      new HashMap<String, LinkedList<MatcherData>>();
+    /** The list of other checkers. */
     private final List<MatcherData> checkers = new ArrayList<MatcherData>();
 
+    /**
+     * Adds a checker to an index.
+     *
+     * @param <K>
+     *            the type of index keys
+     * @param index
+     *            the updated index
+     * @param key
+     *            the key of the checker
+     * @param data
+     *            the indexed checker data
+     */
+    private <K> void addToIndex(Map<K, LinkedList<MatcherData>> index, K key,
+      MatcherData data) {
+        LinkedList<MatcherData> list = index.get(key);
+        if (list == null) {
+            list = new LinkedList<MatcherData>();
+            index.put(key, list);
+        }
+        list.add(data);
+    }
+
+    /**
+     * Gets the first registered checker of an index for a given key.
+     *
+     * @param <K>
+     *            the type of index keys
+     * @param index
+     *            the index
+     * @param key
+     *            the requested key (can be <code>null</code>)
+     * @return The first checker data, <code>null</code> if none.
+     */
+    private <K> MatcherData getFirstInIndex(Map<K, LinkedList<MatcherData>> index,
+      K key) {
+        LinkedList<MatcherData> list = (key == null) ? null : index.get(key);
+        return (list == null) ? null : list.getFirst();
+    }
+
+    /**
+     * Removes the first registered checker of an index for a given key.
+     *
+     * @param <K>
+     *            the type of index keys
+     * @param index
+     *            the index
+     * @param key
+     *            the key of the removed checker
+     */
+    private <K> void removeFirstInIndex(Map<K, LinkedList<MatcherData>> index,
+      K key) {
+        LinkedList<MatcherData> list = index.get(key);
+        list.removeFirst();
+        if (list.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
     /**
      * Registers a new checker to consider when facing an unknown thread.
      *
@@ -98,7 +184,15 @@ class ThreadMatcher<T> {
      */
     synchronized void registerNewChecker(ThreadChecker checker, T data,
       ThreadMatcherNotificationHandler callback) {
-        checkers.add(new MatcherData(checker, data, callback));
+        MatcherData matcherData =
+          new MatcherData(nextSequence++, checker, data, callback);
+        if (checker.getMatchedThread() != null) {
+            addToIndex(threadIndex, checker.getMatchedThread(), matcherData);
+        } else if (checker.getMatchedName() != null) {
+            addToIndex(nameIndex, checker.getMatchedName(), matcherData);
+        } else {
+            checkers.add(matcherData);
+        }
     }
 
     /**
@@ -115,10 +209,21 @@ class ThreadMatcher<T> {
      *            The specified thread was not recognized by the known checkers.
      */
     synchronized T searchDataForThread(Thread thread) {
-        Iterator<MatcherData> iterator = checkers.iterator();
+        MatcherData result = getFirstInIndex(threadIndex, thread);
+        MatcherData byName = getFirstInIndex(nameIndex, thread.getName());
+        if (byName != null
+          && (result == null || byName.getSequence() < result.getSequence())) {
+            result = byName;
+        }
 
+        // The other checkers only matter if registered before the indexed one.
+        Iterator<MatcherData> iterator = checkers.iterator();
         while (iterator.hasNext()) {
             MatcherData data = iterator.next();
+            if (result != null && data.getSequence() > result.getSequence()) {
+                break;
+            }
+
             if (data.getChecker().valueIsCompatibleWith(thread)) {
                 iterator.remove();
                 data.callbackWhenThreadFound(thread);
@@ -126,6 +231,16 @@ class ThreadMatcher<T> {
             }
         }
 
-        throw new ThreadNotFoundException(thread);
+        if (result == null) {
+            throw new ThreadNotFoundException(thread);
+        }
+
+        if (result.getChecker().getMatchedThread() != null) {
+            removeFirstInIndex(threadIndex, thread);
+        } else {
+            removeFirstInIndex(nameIndex, thread.getName());
+        }
+        result.callbackWhenThreadFound(thread);
+        return result.getData();
     }
 }
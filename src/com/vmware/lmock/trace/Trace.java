@@ -27,7 +27,7 @@ public final class Trace {
     /** Singleton in charge of managing traces. */
     private static final Trace trace = new Trace();
     /** The user supplied activity logger, <code>null</code> if none defined. */
-    private ActivityLogger activityLogger;
+    private volatile ActivityLogger activityLogger;
 
     /**
      * Defines an activity logger used by Lmock to output its activity.
@@ -0,0 +1,242 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.test;
+
+import static com.vmware.lmock.test.Dalton.jack;
+import static com.vmware.lmock.test.Dalton.joe;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import com.vmware.lmock.impl.Story;
+import com.vmware.lmock.impl.Stubs;
+import com.vmware.lmock.trace.ActivityLogger;
+import com.vmware.lmock.trace.Trace;
+
+/**
+ * Verifies the memory allocated by the invocation of mocks.
+ *
+ * <p>
+ * The measures rely on the allocation counters of the HotSpot thread bean. If
+ * the running VM does not provide such counters, the tests pass silently.
+ * </p>
+ */
+public class AllocationTest {
+    /** Number of invocations used to warm up the invocation path. */
+    private static final int WARMUP_LOOP_LEN = 20000;
+    /** Number of measured invocations. */
+    private static final int LOOP_LEN = 10000;
+    /** Number of measured invocations with large arguments. */
+    private static final int ARRAY_LOOP_LEN = 100;
+    /** A large array passed as argument. */
+    private static final byte[] ARRAY_ARGUMENT = new byte[64 * 1024];
+
+    /**
+     * Method of the HotSpot thread bean providing the bytes allocated by a
+     * thread, <code>null</code> if not supported by the running VM.
+     */
+    private static final Method getThreadAllocatedBytes = getThreadAllocatedBytesMethod();
+
+    /** @return The HotSpot method counting the allocations, <code>null</code> if none. */
+    private static Method getThreadAllocatedBytesMethod() {
+        try {
+            Class<?> hotspotBean = Class.forName("com.sun.management.ThreadMXBean");
+            return hotspotBean.getMethod("getThreadAllocatedBytes", long.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the number of bytes allocated by the current thread up to now.
+     *
+     * @return The number of bytes, a negative value if not supported.
+     */
+    private static long allocatedBytes() {
+        if (getThreadAllocatedBytes == null) {
+            return -1;
+        }
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        try {
+            return (Long) getThreadAllocatedBytes.invoke(bean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Invokes a stub in loop.
+     */
+    private interface StubInvoker {
+        /**
+         * Invokes the stub a given number of times.
+         *
+         * @param count
+         *            the number of invocations
+         */
+        void invoke(int count);
+    }
+    /** Invokes the stub of <code>getInt</code>. */
+    private static final StubInvoker getIntInvoker = new StubInvoker() {
+        public void invoke(int count) {
+            // Don't use assertEquals in the loop, it boxes its arguments.
+            int total = 0;
+            for (int index = 0; index < count; index++) {
+                total += joe.getInt();
+            }
+            assertEquals(999 * count, total);
+        }
+    };
+    /** Invokes the stub of <code>ping</code> with constant arguments. */
+    private static final StubInvoker pingInvoker = new StubInvoker() {
+        public void invoke(int count) {
+            int total = 0;
+            for (int index = 0; index < count; index++) {
+                total += joe.ping(jack, "hello");
+            }
+            assertEquals(999 * count, total);
+        }
+    };
+    /** Invokes the stub expecting an array. */
+    private static final StubInvoker arrayInvoker = new StubInvoker() {
+        public void invoke(int count) {
+            for (int index = 0; index < count; index++) {
+                joe.setObject(ARRAY_ARGUMENT);
+            }
+        }
+    };
+
+    /**
+     * Measures the average number of bytes allocated when invoking a stub.
+     *
+     * @param invoker
+     *            invokes the stub
+     * @param warmupLength
+     *            the number of invocations before measuring
+     * @param loopLength
+     *            the number of measured invocations
+     * @return The number of bytes per invocation, a negative value if the VM
+     *         cannot tell.
+     */
+    private static long measureBytesPerStubInvocation(StubInvoker invoker, int warmupLength,
+      int loopLength) {
+        invoker.invoke(warmupLength);
+        long before = allocatedBytes();
+        invoker.invoke(loopLength);
+        long after = allocatedBytes();
+        if (before < 0 || after < 0) {
+            return -1;
+        } else {
+            return (after - before) / loopLength;
+        }
+    }
+
+    /**
+     * Verifies that invoking a stub allocates at most a given number of bytes
+     * per invocation, with the trace turned off.
+     *
+     * @param stubs
+     *            the stubs of the measured story
+     * @param invoker
+     *            invokes the stub
+     * @param warmupLength
+     *            the number of invocations before measuring
+     * @param loopLength
+     *            the number of measured invocations
+     * @param maxBytes
+     *            the maximum number of bytes per invocation
+     */
+    private static void assertBytesPerStubInvocation(Stubs stubs, StubInvoker invoker,
+      int warmupLength, int loopLength, long maxBytes) {
+        ActivityLogger activityLogger = Trace.getActivityLogger();
+        Trace.dontReportActivity();
+        Story story = Story.create(null, stubs);
+
+        story.begin();
+        try {
+            long bytesPerInvocation = measureBytesPerStubInvocation(invoker, warmupLength, loopLength);
+            assertTrue("allocated " + bytesPerInvocation + " bytes per invocation",
+              bytesPerInvocation <= maxBytes);
+        } finally {
+            story.end();
+            Trace.reportActivityTo(activityLogger);
+        }
+    }
+
+    /**
+     * Verifies that invoking a stub allocates at most a given number of bytes
+     * per invocation, with the default loop lengths.
+     *
+     * @param stubs
+     *            the stubs of the measured story
+     * @param invoker
+     *            invokes the stub
+     * @param maxBytes
+     *            the maximum number of bytes per invocation
+     */
+    private static void assertBytesPerStubInvocation(Stubs stubs, StubInvoker invoker, long maxBytes) {
+        assertBytesPerStubInvocation(stubs, invoker, WARMUP_LOOP_LEN, LOOP_LEN, maxBytes);
+    }
+
+    /**
+     * Verifies that invoking a stub with a constant result does not allocate
+     * anything.
+     *
+     * <p>
+     * In particular, the traces of the invocation (about ten of them, each
+     * needing at least one array if built) don't allocate anything when the
+     * trace is turned off.
+     * </p>
+     */
+    @Test
+    public void testNoAllocationForStubWithoutArguments() {
+        assertBytesPerStubInvocation(new Stubs() {
+            {
+                stub(joe).getInt();
+                willReturn(999);
+            }
+        }, getIntInvoker, 0);
+    }
+
+    /**
+     * Verifies that comparing an array argument does not allocate memory for
+     * each item of the array.
+     */
+    @Test
+    public void testNoAllocationPerArrayItem() {
+        assertBytesPerStubInvocation(new Stubs() {
+            {
+                stub(joe).setObject(ARRAY_ARGUMENT.clone());
+            }
+        }, arrayInvoker, ARRAY_LOOP_LEN, ARRAY_LOOP_LEN, 1023);
+    }
+
+    /**
+     * Verifies that invoking a stub with constant arguments and a constant
+     * result only allocates the array of arguments built by the proxy.
+     *
+     * <p>
+     * Such an array of two references takes at most 32 bytes.
+     * </p>
+     */
+    @Test
+    public void testNoAllocationForStubWithArguments() {
+        assertBytesPerStubInvocation(new Stubs() {
+            {
+                stub(joe).ping(jack, "hello");
+                willReturn(999);
+            }
+        }, pingInvoker, 32);
+    }
+}
@@ -990,4 +990,33 @@ public class AnyClauseTest {
         }
         assertEndReportsError(lastError);
     }
+
+    /**
+     * Verifies that an "any" clause does not accept the invocation of an
+     * overloaded method having the same number of arguments.
+     */
+    @Test
+    public void testAnyOfDoesNotMatchOverloadedMethods() {
+        ExpectationError lastError = null;
+
+        Story story = Story.create(new Scenario() {
+            {
+                expect(joe).ping(anyOf(Dalton.class), anyOf(String[].class));
+                expect().occurs(1).willReturn(2);
+            }
+        });
+
+        story.begin();
+        try {
+            joe.ping(jack, (String) null);
+            fail("overloaded method matched an expectation");
+        } catch (ExpectationError e) {
+            lastError = e;
+        }
+        assertEndReportsError(story, lastError);
+
+        story.begin();
+        assertEquals(2, joe.ping(jack, (String[]) null));
+        story.end();
+    }
 }
@@ -0,0 +1,177 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.test;
+
+import static com.vmware.lmock.test.Dalton.jack;
+import static com.vmware.lmock.test.Dalton.joe;
+import static com.vmware.lmock.test.Dalton.william;
+import static com.vmware.lmock.test.LMAsserts.assertEndReportsError;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.vmware.lmock.exception.ExpectationError;
+import com.vmware.lmock.exception.UnsatisfiedOccurrenceError;
+import com.vmware.lmock.impl.Scenario;
+import com.vmware.lmock.impl.Story;
+
+/**
+ * Validation of the groups of expectations declared in any order.
+ */
+public class AnyOrderTest {
+    /** Number of expectations in large groups. */
+    private static final int GROUP_SIZE = 1000;
+
+    /**
+     * Creates a story expecting three invocations in any order, between two
+     * ordered invocations.
+     *
+     * @return The story.
+     */
+    private static Story aStoryWithAGroupOfThree() {
+        return Story.create(new Scenario() {
+            {
+                expect(joe).ping();
+                expect().occurs(1);
+                inAnyOrder(new Scenario() {
+                    {
+                        expect(jack).setInt(1);
+                        expect().occurs(1);
+                        expect(jack).setInt(2);
+                        expect().occurs(1);
+                        expect(william).getInt();
+                        expect().occurs(1).willReturn(3);
+                    }
+                });
+                expect(joe).ping();
+                expect().occurs(1).willReturn(4);
+            }
+        });
+    }
+
+    /**
+     * Verifies that the expectations of a group are satisfied in any order.
+     */
+    @Test
+    public void testGroupInAnyOrder() {
+        Story story = aStoryWithAGroupOfThree();
+
+        story.begin();
+        joe.ping();
+        jack.setInt(1);
+        jack.setInt(2);
+        assertEquals(3, william.getInt());
+        assertEquals(4, joe.ping());
+        story.end();
+
+        story.begin();
+        joe.ping();
+        assertEquals(3, william.getInt());
+        jack.setInt(2);
+        jack.setInt(1);
+        assertEquals(4, joe.ping());
+        story.end();
+    }
+
+    /**
+     * Verifies that the story cannot go beyond a group before every member is
+     * satisfied.
+     */
+    @Test
+    public void testIncompleteGroup() {
+        Story story = aStoryWithAGroupOfThree();
+
+        story.begin();
+        joe.ping();
+        jack.setInt(2);
+        assertEquals(3, william.getInt());
+        try {
+            joe.ping();
+            fail("went beyond an incomplete group");
+        } catch (UnsatisfiedOccurrenceError e) {
+            assertEndReportsError(story, e);
+        }
+    }
+
+    /**
+     * Verifies that the story cannot end before every member of a group is
+     * satisfied.
+     */
+    @Test
+    public void testIncompleteGroupAtTheEndOfTheStory() {
+        Story story = Story.create(new Scenario() {
+            {
+                inAnyOrder(new Scenario() {
+                    {
+                        expect(jack).setInt(1);
+                        expect().occurs(1);
+                        expect(jack).setInt(2);
+                        expect().occurs(1);
+                    }
+                });
+            }
+        });
+
+        story.begin();
+        jack.setInt(2);
+        try {
+            story.end();
+            fail("ended a story with an incomplete group");
+        } catch (UnsatisfiedOccurrenceError e) {
+        }
+    }
+
+    /**
+     * Verifies that a member cannot be invoked more than expected.
+     */
+    @Test
+    public void testMemberInvokedTooManyTimes() {
+        Story story = aStoryWithAGroupOfThree();
+        ExpectationError lastError = null;
+
+        story.begin();
+        joe.ping();
+        jack.setInt(1);
+        try {
+            jack.setInt(1);
+            fail("invoked a member of a group twice");
+        } catch (ExpectationError e) {
+            lastError = e;
+        }
+        assertEndReportsError(story, lastError);
+    }
+
+    /**
+     * Verifies that a large group is satisfied in any order.
+     */
+    @Test
+    public void testLargeGroup() {
+        Story story = Story.create(new Scenario() {
+            {
+                inAnyOrder(new Scenario() {
+                    {
+                        for (int index = 0; index < GROUP_SIZE; index++) {
+                            expect(jack).setInt(index);
+                            expect().occurs(1);
+                            expect(joe).ping(william, "message" + index);
+                            expect().occurs(1).willReturn(index);
+                        }
+                    }
+                });
+            }
+        });
+
+        story.begin();
+        for (int index = GROUP_SIZE - 1; index >= 0; index--) {
+            assertEquals(index, joe.ping(william, "message" + index));
+            jack.setInt(index);
+        }
+        story.end();
+    }
+}
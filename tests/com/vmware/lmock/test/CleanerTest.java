@@ -0,0 +1,100 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.test;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static com.vmware.lmock.test.LMAsserts.assertCollected;
+import com.vmware.lmock.exception.UnexpectedInvocationError;
+import com.vmware.lmock.impl.Cleaner;
+import com.vmware.lmock.impl.Mock;
+import com.vmware.lmock.impl.Stubs;
+import java.lang.ref.WeakReference;
+
+/**
+ * Validation of the cleanup of the invocation handlers assigned to the mocks.
+ */
+public class CleanerTest {
+    /**
+     * Assigns an invocation handler to a mock, by specifying a stub.
+     *
+     * @param mock
+     *            the mock
+     */
+    private static void assignHandler(final Dalton mock) {
+        new Stubs() {
+            {
+                stub(mock).ping();
+                willReturn(1);
+            }
+        };
+    }
+
+    /**
+     * Creates a mock holding an invocation handler.
+     *
+     * @return A reference to the mock, which is then dropped.
+     */
+    private static WeakReference<Dalton> createMockWithHandler() {
+        Dalton dalton = Mock.getObject(Dalton.class);
+        assignHandler(dalton);
+        return new WeakReference<Dalton>(dalton);
+    }
+
+    /**
+     * Verifies that the cleaner does not keep alive a dropped mock that was
+     * assigned a handler.
+     *
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    @Test
+    public void testDroppedMockIsCollectable() throws InterruptedException {
+        Cleaner.cleanup();
+        assertCollected(createMockWithHandler());
+        Cleaner.cleanup();
+    }
+
+    /**
+     * Leaves a stub specification incomplete, so that the mock keeps the
+     * handler of the specification.
+     *
+     * @param mock
+     *            the mock
+     */
+    private static void leaveHandler(final Dalton mock) {
+        new Stubs() {
+            {
+                stub(mock);
+            }
+        };
+    }
+
+    /**
+     * Verifies that a mock is left without handler after a cleanup, and can be
+     * registered again to be cleaned up by the next cleanup.
+     */
+    @Test
+    public void testCleanupRemovesHandlers() {
+        Dalton[] mocks = Mock.getObjects(Dalton.class, 3);
+        for (int round = 0; round < 2; round++) {
+            // A mock still holding a handler cannot be specified again.
+            for (Dalton mock : mocks) {
+                leaveHandler(mock);
+            }
+            Cleaner.cleanup();
+            for (Dalton mock : mocks) {
+                try {
+                    mock.ping();
+                    fail("invoked a mock without handler");
+                } catch (UnexpectedInvocationError e) {
+                }
+            }
+        }
+    }
+}
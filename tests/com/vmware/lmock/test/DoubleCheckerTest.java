@@ -105,4 +105,28 @@ public class DoubleCheckerTest {
         DoubleChecker instance = DoubleChecker.valuesBetween(-2.0, 4.0);
         assertFalse(instance.valueIsCompatibleWith(null));
     }
+
+    /**
+     * Verifies that unboxed values are compared as the boxed values, including
+     * the special values.
+     */
+    @Test
+    public void testUnboxedValues() {
+        double[] values = {
+            Double.NaN, -0.0, 0.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 1.5
+        };
+        DoubleChecker[] instances = {
+            DoubleChecker.positiveValues, DoubleChecker.negativeValues,
+            DoubleChecker.valuesBetween(-1.0, 1.0), DoubleChecker.valuesGreaterOrEqualTo(-0.0)
+        };
+        for (DoubleChecker instance : instances) {
+            for (double value : values) {
+                assertEquals(instance + " " + value,
+                  instance.valueIsCompatibleWith(Double.valueOf(value)),
+                  instance.valueIsCompatibleWith(value));
+            }
+        }
+        assertFalse(DoubleChecker.positiveValues.valueIsCompatibleWith(-0.0));
+        assertTrue(DoubleChecker.negativeValues.valueIsCompatibleWith(-0.0));
+    }
 }
@@ -0,0 +1,227 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.test;
+
+import static com.vmware.lmock.checker.Occurrences.exactly;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.lmock.exception.UnexpectedInvocationError;
+import com.vmware.lmock.impl.Mock;
+import com.vmware.lmock.impl.Scenario;
+import com.vmware.lmock.impl.Story;
+import com.vmware.lmock.impl.Stubs;
+import com.vmware.lmock.test.Dalton.SpecialDaltonException;
+
+/**
+ * Validation of the mocks created with generated classes.
+ */
+public class GeneratedMockTest {
+    /** An interface which cannot be implemented out of this package. */
+    interface Hidden {
+        int get();
+    }
+
+    /** Enables the generation of the mock classes. */
+    @Before
+    public void setUp() {
+        Mock.generateMockClasses(true);
+    }
+
+    /** Restores the default creation of mocks. */
+    @After
+    public void tearDown() {
+        Mock.generateMockClasses(false);
+    }
+
+    /**
+     * Verifies that the mocks of a public interface are not proxies, and
+     * provide the default behavior of the object methods.
+     */
+    @Test
+    public void testGeneratedObjectMethods() {
+        Dalton lucky = Mock.getObject("lucky", Dalton.class);
+        Dalton luke = Mock.getObject("luke", Dalton.class);
+        assertFalse(Proxy.isProxyClass(lucky.getClass()));
+        assertSame(lucky.getClass(), luke.getClass());
+        assertEquals("lucky", lucky.toString());
+        assertTrue(lucky.equals(lucky));
+        assertFalse(lucky.equals(luke));
+        assertEquals(lucky.hashCode(), lucky.hashCode());
+    }
+
+    /**
+     * Verifies that the generated classes convert the arguments and returned
+     * values of every type.
+     */
+    @Test
+    public void testGeneratedStubs() {
+        final Dalton lucky = Mock.getObject("lucky", Dalton.class);
+        final Dalton luke = Mock.getObject("luke", Dalton.class);
+        final Object[] stuff = {"gun", 6};
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(lucky).getBoolean();
+                willReturn(true);
+                stub(lucky).getChar();
+                willReturn('L');
+                stub(lucky).getByte();
+                willReturn((byte) -1);
+                stub(lucky).getShort();
+                willReturn((short) 1000);
+                stub(lucky).getInt();
+                willReturn(100000);
+                stub(lucky).getLong();
+                willReturn(Long.MAX_VALUE);
+                stub(lucky).getFloat();
+                willReturn(1.5f);
+                stub(lucky).getDouble();
+                willReturn(2.5);
+                stub(lucky).getInt_();
+                willReturn(null);
+                stub(lucky).next();
+                willReturn(luke);
+                stub(lucky).emptyPocket();
+                willReturn(stuff);
+                stub(lucky).ping(luke);
+                willReturn(1);
+                stub(lucky).ping(luke, "hello");
+                willReturn(2);
+                stub(lucky).ping(luke, "hello", "world");
+                willReturn(3);
+            }
+        });
+
+        story.begin();
+        assertTrue(lucky.getBoolean());
+        assertEquals('L', lucky.getChar());
+        assertEquals(-1, lucky.getByte());
+        assertEquals(1000, lucky.getShort());
+        assertEquals(100000, lucky.getInt());
+        assertEquals(Long.MAX_VALUE, lucky.getLong());
+        assertEquals(1.5f, lucky.getFloat(), 0);
+        assertEquals(2.5, lucky.getDouble(), 0);
+        assertEquals(null, lucky.getInt_());
+        assertSame(luke, lucky.next());
+        assertArrayEquals(stuff, lucky.emptyPocket());
+        assertEquals(1, lucky.ping(luke));
+        assertEquals(2, lucky.ping(luke, "hello"));
+        assertEquals(3, lucky.ping(luke, "hello", "world"));
+        story.end();
+    }
+
+    /**
+     * Verifies that the generated classes pass the arguments of every type to
+     * the expectations.
+     */
+    @Test
+    public void testGeneratedExpectations() {
+        final Dalton lucky = Mock.getObject("lucky", Dalton.class);
+        Story story = Story.create(new Scenario() {
+            {
+                expect(lucky).setLong(Long.MIN_VALUE);
+                occurs(exactly(1));
+                expect(lucky).setDouble(-0.5);
+                occurs(exactly(1));
+                expect(lucky).setChar('x');
+                occurs(exactly(1));
+                expect(lucky).fillPocket("gun", 6);
+                occurs(exactly(1));
+            }
+        });
+
+        story.begin();
+        lucky.setLong(Long.MIN_VALUE);
+        lucky.setDouble(-0.5);
+        lucky.setChar('x');
+        lucky.fillPocket("gun", 6);
+        try {
+            lucky.setLong(0L);
+            fail("unexpected invocation accepted");
+        } catch (UnexpectedInvocationError e) {
+        }
+    }
+
+    /**
+     * Verifies that the generated classes throw the declared exceptions.
+     *
+     * @throws SpecialDaltonException
+     */
+    @Test
+    public void testGeneratedDeclaredException() throws SpecialDaltonException {
+        final Dalton lucky = Mock.getObject("lucky", Dalton.class);
+        final SpecialDaltonException exception = new SpecialDaltonException("bang");
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(lucky).bother();
+                willThrow(exception);
+            }
+        });
+
+        story.begin();
+        try {
+            lucky.bother();
+            fail("exception not thrown");
+        } catch (SpecialDaltonException e) {
+            assertSame(exception, e);
+        }
+        story.end();
+    }
+
+    /**
+     * Verifies that the generated classes implement the inherited methods.
+     */
+    @Test
+    public void testGeneratedInheritedMethods() {
+        final StubTest.Rank rank = Mock.getObject(StubTest.Rank.class);
+        assertFalse(Proxy.isProxyClass(rank.getClass()));
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(rank).level();
+                willReturn(3);
+                stub(rank).compareTo("general");
+                willReturn(-1);
+            }
+        });
+
+        story.begin();
+        assertEquals(3, rank.level());
+        assertEquals(-1, rank.compareTo("general"));
+        story.end();
+    }
+
+    /**
+     * Verifies that the mocks of an interface which cannot be implemented
+     * remain proxies.
+     */
+    @Test
+    public void testProxyFallback() {
+        final Hidden hidden = Mock.getObject(Hidden.class);
+        assertTrue(Proxy.isProxyClass(hidden.getClass()));
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(hidden).get();
+                willReturn(7);
+            }
+        });
+
+        story.begin();
+        assertEquals(7, hidden.get());
+        story.end();
+    }
+}
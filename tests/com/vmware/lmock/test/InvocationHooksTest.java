@@ -25,6 +25,7 @@ import com.vmware.lmock.exception.UnexpectedInvocationError;
 import com.vmware.lmock.impl.Mock;
 import com.vmware.lmock.impl.Scenario;
 import com.vmware.lmock.impl.Story;
+import com.vmware.lmock.impl.Stubs;
 import static com.vmware.lmock.test.LMAsserts.*;
 
 /**
@@ -70,6 +71,157 @@ public class InvocationHooksTest {
         story.end();
     }
 
+    /** An interface redeclaring <code>toString</code>. */
+    public interface Described {
+        @Override
+        public String toString();
+    }
+
+    /**
+     * Verifies that the hooks apply to the redeclarations of the methods of
+     * <code>Object</code>, which can still be redefined by an expectation.
+     */
+    @Test
+    public void testRedeclaredToString() {
+        final Described described = Mock.getObject("described", Described.class);
+        assertEquals("described", described.toString());
+        Story story = Story.create(new Scenario() {
+            {
+                expect(described).toString();
+                willReturn("hello!").occurs(exactly(1));
+            }
+        });
+
+        story.begin();
+        assertEquals("hello!", described.toString());
+        assertEquals("described", described.toString());
+        story.end();
+        assertEquals("described", described.toString());
+    }
+
+    /**
+     * Verifies that the methods of <code>Object</code> can be answered
+     * directly, even by threads that are not part of the story, unless they
+     * are expected.
+     *
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    @Test
+    public void testObjectMethodsAnsweredDirectly() throws InterruptedException {
+        final List<?> list = Mock.getObject("list", List.class);
+        final Object[] results = new Object[2];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    results[0] = list.hashCode();
+                    results[1] = list.equals(list);
+                } catch (Throwable e) {
+                    results[0] = e;
+                }
+            }
+        };
+        Story story = Story.create(new Scenario() {
+            {
+                expect(list).isEmpty();
+                willReturn(false).occurs(exactly(1));
+                expect(list).toString();
+                willReturn("hello!").occurs(exactly(1));
+            }
+        });
+
+        Mock.answerObjectMethodsDirectly(true);
+        try {
+            story.begin();
+            other.start();
+            other.join(5000);
+            assertFalse(list.isEmpty());
+            assertEquals("hello!", list.toString());
+            story.end();
+        } finally {
+            Mock.answerObjectMethodsDirectly(false);
+        }
+        assertEquals(list.hashCode(), results[0]);
+        assertEquals(true, results[1]);
+    }
+
+    /**
+     * Verifies that a method of <code>Object</code> expected by a story is
+     * answered directly again in the following stories.
+     *
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    @Test
+    public void testObjectMethodsAnsweredDirectlyAfterRedefinition() throws InterruptedException {
+        final List<?> list = Mock.getObject("list", List.class);
+        final Object[] results = new Object[1];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    results[0] = list.toString();
+                } catch (Throwable e) {
+                    results[0] = e;
+                }
+            }
+        };
+        Story first = Story.create(new Scenario() {
+            {
+                expect(list).toString();
+                willReturn("hello!").occurs(exactly(1));
+            }
+        });
+        Story second = Story.create(new Scenario() {
+            {
+                expect(list).isEmpty();
+                willReturn(false).occurs(exactly(1));
+            }
+        });
+
+        Mock.answerObjectMethodsDirectly(true);
+        try {
+            first.begin();
+            assertEquals("hello!", list.toString());
+            first.end();
+
+            second.begin();
+            other.start();
+            other.join(5000);
+            assertFalse(list.isEmpty());
+            second.end();
+        } finally {
+            Mock.answerObjectMethodsDirectly(false);
+        }
+        assertEquals("list", results[0]);
+    }
+
+    /**
+     * Verifies that a method of <code>Object</code> stubbed by the running
+     * story is not answered directly.
+     */
+    @Test
+    public void testStubbedObjectMethodNotAnsweredDirectly() {
+        final List<?> list = Mock.getObject("list", List.class);
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(list).toString();
+                willReturn("hello!");
+            }
+        });
+
+        Mock.answerObjectMethodsDirectly(true);
+        try {
+            story.begin();
+            assertEquals("hello!", list.toString());
+            story.end();
+            assertEquals("list", list.toString());
+        } finally {
+            Mock.answerObjectMethodsDirectly(false);
+        }
+    }
+
     /**
      * Verifies that <code>toString</code> can be redefined by an expectation.
      */
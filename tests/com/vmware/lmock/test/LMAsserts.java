@@ -13,6 +13,7 @@ import static org.junit.Assert.*;
 
 import com.vmware.lmock.impl.Story;
 import com.vmware.lmock.masquerade.Schemer;
+import java.lang.ref.Reference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -94,4 +95,25 @@ final class LMAsserts {
         Matcher matcher = pattern.matcher(input);
         assertTrue("'" + input + "' contains '" + regexp + "'", matcher.find());
     }
+
+    /**
+     * Verifies that an object is garbage collected once dropped.
+     *
+     * <p>
+     * Garbage collection is requested several times, since a single request
+     * gives no guarantee.
+     * </p>
+     *
+     * @param reference
+     *            a reference to the dropped object
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    static void assertCollected(Reference<?> reference) throws InterruptedException {
+        for (int attempt = 0; attempt < 50 && reference.get() != null; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("object not collected", reference.get());
+    }
 }
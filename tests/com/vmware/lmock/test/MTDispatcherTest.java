@@ -266,4 +266,99 @@ public class MTDispatcherTest {
         assertThreadTestIsOk(test1);
         assertThreadTestIsOk(test2);
     }
+
+    /**
+     * Verifies that the first registered checker wins, whatever the kind of
+     * checkers (by thread, by name or arbitrary).
+     */
+    @Test
+    public void testFirstRegisteredCheckerWins() {
+        MTDispatcher<String> instance = new MTDispatcher<String>();
+        instance.register(ThreadChecker.equalTo(new Thread()), "another thread", null);
+        instance.register(ThreadChecker.instancesOf(Thread.class), "any", null);
+        instance.register(ThreadChecker.equalTo(Thread.currentThread()), "me", null);
+        assertEquals("any", instance.getCurrentData());
+
+        instance = new MTDispatcher<String>();
+        instance.register(ThreadChecker.threadsCalled(Thread.currentThread().getName()),
+          "my name", null);
+        instance.register(ThreadChecker.anyThread, "any", null);
+        instance.register(ThreadChecker.equalTo(Thread.currentThread()), "me", null);
+        assertEquals("my name", instance.getCurrentData());
+    }
+
+    /**
+     * Verifies that checkers recognizing threads by name are consumed in the
+     * order of registration.
+     *
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    @Test
+    public void testCheckersByNameAreConsumedInOrder() throws InterruptedException {
+        final MTDispatcher<String> instance = new MTDispatcher<String>();
+        final String[] otherData = new String[1];
+        Thread other = new Thread("client") {
+            @Override
+            public void run() {
+                otherData[0] = instance.getCurrentData();
+            }
+        };
+
+        MatchingHandler[] handlers = {
+            new MatchingHandler(), new MatchingHandler()
+        };
+        instance.register(ThreadChecker.threadsCalled("client"), "first", handlers[0]);
+        instance.register(ThreadChecker.threadsCalled("client"), "second", handlers[1]);
+        other.start();
+        other.join(5000);
+        assertEquals("first", otherData[0]);
+        assertTrue(handlers[0].wasMatched());
+        assertFalse(handlers[1].wasMatched());
+
+        String myName = Thread.currentThread().getName();
+        Thread.currentThread().setName("client");
+        try {
+            assertEquals("second", instance.getCurrentData());
+        } finally {
+            Thread.currentThread().setName(myName);
+        }
+    }
+
+    /**
+     * Verifies that a bound thread resolves its data again once the bindings
+     * are invalidated, after a change of the registrations.
+     *
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    @Test
+    public void testInvalidatedBindingIsResolvedAgain() throws InterruptedException {
+        final MTDispatcher<String> instance = new MTDispatcher<String>();
+        MatchingHandler[] handlers = {
+            new MatchingHandler(), new MatchingHandler()
+        };
+        instance.register(ThreadChecker.anyThread, "me", handlers[0]);
+        assertEquals("me", instance.getCurrentData());
+
+        // A new checker would also accept this thread: the resolution must
+        // still find it among the known threads.
+        instance.register(ThreadChecker.anyThread, "the other", handlers[1]);
+        instance.invalidateBindings();
+        assertEquals("me", instance.getCurrentData());
+        assertFalse(handlers[1].wasMatched());
+
+        final String[] otherData = new String[1];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                otherData[0] = instance.getCurrentData();
+            }
+        };
+        other.start();
+        other.join(5000);
+        assertEquals("the other", otherData[0]);
+        assertTrue(handlers[1].wasMatched());
+        assertEquals("me", instance.getCurrentData());
+    }
 }
@@ -15,6 +15,7 @@ import static com.vmware.lmock.impl.InvocationResult.throwException;
 import static com.vmware.lmock.masquerade.Schemer.aNonNullOf;
 import static com.vmware.lmock.masquerade.Schemer.anyOf;
 import static com.vmware.lmock.masquerade.Schemer.append;
+import static com.vmware.lmock.masquerade.Schemer.batch;
 import static com.vmware.lmock.masquerade.Schemer.begin;
 import static com.vmware.lmock.masquerade.Schemer.end;
 import static com.vmware.lmock.masquerade.Schemer.will;
@@ -30,6 +31,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.util.List;
+import java.util.concurrent.CyclicBarrier;
 
 import org.junit.Test;
 
@@ -376,4 +378,146 @@ public class MasqueradeTest {
         }
         end();
     }
+
+    /**
+     * Runs a series of masquerades in the current thread, synchronized with a
+     * concurrent series.
+     *
+     * @param dalton
+     *            the mock used by the masquerades
+     * @param barrier
+     *            synchronizes the two series, so that the masquerades overlap
+     * @return The number of errors reported by the masquerades.
+     */
+    private static int runParallelMasquerades(Dalton dalton, CyclicBarrier barrier) {
+        int errors = 0;
+        for (int index = 0; index < 20; index++) {
+            try {
+                begin();
+                willInvoke(1).willReturn(index).when(dalton).ping(with(dalton));
+                barrier.await();
+                assertEquals(index, dalton.ping(dalton));
+                barrier.await();
+                end();
+            } catch (Throwable e) {
+                errors++;
+                barrier.reset();
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Verifies that masquerades run by different threads do not interfere.
+     *
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    @Test
+    public void testIndependentMasqueradesInParallel() throws InterruptedException {
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final int[] errors = new int[1];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                errors[0] = runParallelMasquerades(Mock.getObject("luke", Dalton.class), barrier);
+            }
+        };
+
+        other.start();
+        int localErrors = runParallelMasquerades(Mock.getObject("lucky", Dalton.class), barrier);
+        other.join();
+        assertEquals(0, localErrors);
+        assertEquals(0, errors[0]);
+    }
+
+    /**
+     * Verifies that the directives of a batch are registered once the batch
+     * is complete.
+     */
+    @Test
+    public void testBatchedDirectives() {
+        @SuppressWarnings("unchecked")
+        final List<String> list = Mock.getObject(List.class);
+        begin();
+        batch(new Runnable() {
+            public void run() {
+                for (int index = 0; index < 100; index++) {
+                    willReturn("item" + index).when(list).get(index);
+                }
+                willInvoke(1).willReturn(2).when(joe).ping(jack);
+                willInvoke(1).of(jack).ping();
+            }
+        });
+        for (int index = 99; index >= 0; index--) {
+            assertEquals("item" + index, list.get(index));
+        }
+        assertEquals(2, joe.ping(jack));
+        try {
+            end();
+            fail("ended a masquerade with an unsatisfied batched expectation");
+        } catch (UnsatisfiedOccurrenceError e) {
+        }
+    }
+
+    /**
+     * Verifies that the directives of a batch are dropped if the batch
+     * fails.
+     */
+    @Test
+    public void testFailingBatch() {
+        begin();
+        try {
+            batch(new Runnable() {
+                public void run() {
+                    willInvoke(1).of(joe).ping();
+                    throw new IllegalStateException("failing batch");
+                }
+            });
+            fail("batch did not throw");
+        } catch (IllegalStateException e) {
+        }
+        end();
+    }
+
+    /**
+     * Verifies that the failure of a nested batch drops the directives of
+     * the enclosing batch, even if the enclosing specification goes on.
+     */
+    @Test
+    public void testFailingNestedBatch() {
+        begin();
+        try {
+            batch(new Runnable() {
+                public void run() {
+                    willInvoke(1).of(joe).ping();
+                    try {
+                        batch(new Runnable() {
+                            public void run() {
+                                throw new IllegalStateException("failing nested batch");
+                            }
+                        });
+                        fail("nested batch did not throw");
+                    } catch (IllegalStateException e) {
+                    }
+                    willInvoke(1).of(jack).ping();
+                }
+            });
+            fail("aborted batch committed");
+        } catch (SchemerException e) {
+        }
+        // None of the directives was registered.
+        end();
+    }
+
+    /**
+     * Verifies that a batch requires an ongoing masquerade.
+     */
+    @Test(expected = SchemerException.class)
+    public void testBatchWithoutMasquerade() {
+        batch(new Runnable() {
+            public void run() {
+            }
+        });
+    }
 }
@@ -1432,4 +1432,46 @@ public class MatchingExpectationTest {
         joe.fillPocket(jack.emptyPocket()[0]);
         Schemer.end();
     }
+
+    /**
+     * Verifies that arrays of primitive types are compared item by item,
+     * whether they are compared with arrays of the same type or not.
+     */
+    @Test
+    public void testArgsWithPrimitiveArrays() {
+        ExpectationError lastError = null;
+
+        Story story = Story.create(new Scenario() {
+            {
+                expect(joe).setObject(new int[]{1, 2, 3});
+                expect().occurs(exactly(2));
+                expect(joe).setObject(new double[]{0.5, Double.NaN});
+                expect().occurs(exactly(1));
+                expect(joe).setObject(new byte[]{1, 2});
+                expect().occurs(exactly(1));
+            }
+        });
+
+        story.begin();
+        joe.setObject(new int[]{1, 2, 3});
+        joe.setObject(new Integer[]{1, 2, 3});
+        joe.setObject(new double[]{0.5, Double.NaN});
+        try {
+            joe.setObject(new byte[]{1, 3});
+            fail("invoked a method with a different array");
+        } catch (ExpectationError e) {
+            lastError = e;
+        }
+        assertEndReportsError(story, lastError);
+
+        story.begin();
+        joe.setObject(new int[]{1, 2, 3});
+        try {
+            joe.setObject(new long[]{1, 2, 3});
+            fail("invoked a method with an array of another type");
+        } catch (ExpectationError e) {
+            lastError = e;
+        }
+        assertEndReportsError(story, lastError);
+    }
 }
@@ -9,21 +9,28 @@ package com.vmware.lmock.test;
 
 import static com.vmware.lmock.impl.Story.create;
 import static com.vmware.lmock.impl.Story.createWithMultipleActors;
+import static com.vmware.lmock.checker.Occurrences.exactly;
 import static com.vmware.lmock.test.Dalton.joe;
+import static com.vmware.lmock.test.LMAsserts.assertCollected;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Test;
 
+import com.vmware.lmock.exception.ExpectationError;
 import com.vmware.lmock.exception.MissingInvocationException;
 import com.vmware.lmock.exception.MockReferenceException;
 import com.vmware.lmock.exception.UnexpectedInvocationError;
+import com.vmware.lmock.impl.Mock;
 import com.vmware.lmock.impl.Scenario;
 import com.vmware.lmock.impl.Story;
 import com.vmware.lmock.impl.StoryTrack;
@@ -126,6 +133,241 @@ public class MiscellaneousTest {
         }
     }
 
+    /**
+     * Verifies that successive stories sharing the same mocks each get the
+     * invocations while they run, and only then.
+     */
+    @Test
+    public void testSuccessiveStoriesSharingMocks() {
+        final Dalton[] daltons = Mock.getObjects(Dalton.class, 100);
+        Story[] stories = new Story[2];
+        for (int index = 0; index < stories.length; index++) {
+            final int pong = index;
+            stories[index] = Story.create(null, new Stubs() {
+                {
+                    for (Dalton dalton : daltons) {
+                        stub(dalton).ping();
+                        willReturn(pong);
+                    }
+                }
+            });
+        }
+
+        for (int index = 0; index < stories.length; index++) {
+            stories[index].begin();
+            for (Dalton dalton : daltons) {
+                assertEquals(index, dalton.ping());
+            }
+            stories[index].end();
+        }
+
+        try {
+            daltons[0].ping();
+            fail("mock invocation out of scope");
+        } catch (UnexpectedInvocationError e) {
+        }
+    }
+
+    /**
+     * Verifies that the mocks appended to a running story are linked to that
+     * story.
+     */
+    @Test
+    public void testMockAppendedToRunningStory() {
+        final Dalton dalton = Mock.getObject(Dalton.class);
+        Story story = Story.create(null, new Stubs());
+        story.begin();
+        story.append(new Stubs() {
+            {
+                stub(dalton).ping();
+                willReturn(7);
+            }
+        });
+        assertEquals(7, dalton.ping());
+        story.end();
+    }
+
+    /**
+     * Verifies that a cleanup triggered by a thread which began no story does
+     * not unlink the mocks of the story running in another thread.
+     *
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    @Test
+    public void testCleanupByAnotherThread() throws InterruptedException {
+        final Dalton dalton = Mock.getObject(Dalton.class);
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(dalton).ping();
+                willReturn(3);
+            }
+        });
+
+        story.begin();
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    new Scenario() {
+                        {
+                            expect("not a mock");
+                        }
+                    };
+                } catch (MockReferenceException e) {
+                }
+            }
+        };
+        other.start();
+        other.join();
+        assertEquals(3, dalton.ping());
+        story.end();
+    }
+
+    /**
+     * Runs a story failing on an unexpected invocation, in a dedicated thread.
+     *
+     * @return A reference to the mock of the story, which is then dropped.
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    private static WeakReference<Dalton> runFailedStory() throws InterruptedException {
+        final List<WeakReference<Dalton>> references = new ArrayList<WeakReference<Dalton>>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                final Dalton dalton = Mock.getObject(Dalton.class);
+                Story story = Story.create(new Scenario() {
+                    {
+                        expect(dalton).ping();
+                        occurs(exactly(1));
+                    }
+                });
+
+                story.begin();
+                try {
+                    dalton.getInt();
+                } catch (ExpectationError e) {
+                }
+                references.add(new WeakReference<Dalton>(dalton));
+            }
+        };
+        thread.start();
+        thread.join();
+        return references.get(0);
+    }
+
+    /**
+     * Verifies that a story which failed and was never ended does not keep
+     * its mocks alive.
+     *
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    @Test
+    public void testFailedStoryIsReleased() throws InterruptedException {
+        assertCollected(runFailedStory());
+    }
+
+    /**
+     * Verifies that the unexpected invocations of a thread whose own story is
+     * over are not reported by a story running in another thread.
+     *
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    @Test
+    public void testUnexpectedInvocationAfterOwnStory() throws InterruptedException {
+        final Dalton dalton = Mock.getObject(Dalton.class);
+        final CountDownLatch ownStoryIsOver = new CountDownLatch(1);
+        final CountDownLatch otherStoryIsRunning = new CountDownLatch(1);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                Story story = Story.create(null, new Stubs());
+                story.begin();
+                story.end();
+                ownStoryIsOver.countDown();
+                try {
+                    otherStoryIsRunning.await();
+                    dalton.ping();
+                } catch (InterruptedException e) {
+                } catch (UnexpectedInvocationError e) {
+                    errors.add(e);
+                }
+            }
+        };
+
+        thread.start();
+        ownStoryIsOver.await();
+        Story story = Story.create(null, new Stubs());
+        story.begin();
+        otherStoryIsRunning.countDown();
+        thread.join();
+        story.end();
+        assertEquals(1, errors.size());
+    }
+
+    /**
+     * Runs a series of independent stories on a private mock.
+     *
+     * @param failing
+     *            <code>true</code> to fail every story
+     * @return The number of failed stories.
+     */
+    private static int runIndependentStories(boolean failing) {
+        final Dalton dalton = Mock.getObject(Dalton.class);
+        int failures = 0;
+        for (int count = 0; count < 200; count++) {
+            Story story = Story.create(new Scenario() {
+                {
+                    expect(dalton).ping();
+                    willReturn(1).occurs(exactly(1));
+                }
+            });
+
+            story.begin();
+            assertEquals(1, dalton.ping());
+            if (failing) {
+                try {
+                    dalton.getInt();
+                } catch (UnexpectedInvocationError e) {
+                }
+            }
+            try {
+                story.end();
+            } catch (UnexpectedInvocationError e) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Verifies that independent stories can run concurrently, without mixing
+     * up their errors.
+     *
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    @Test
+    public void testIndependentStoriesInParallel() throws InterruptedException {
+        final int[] failures = new int[1];
+        Thread failingThread = new Thread() {
+            @Override
+            public void run() {
+                failures[0] = runIndependentStories(true);
+            }
+        };
+
+        failingThread.start();
+        int successfulFailures = runIndependentStories(false);
+        failingThread.join();
+        assertEquals(0, successfulFailures);
+        assertEquals(200, failures[0]);
+    }
+
     /**
      * Verifies that there's no confusion between mocks and other proxies.
      */
@@ -9,9 +9,14 @@ package com.vmware.lmock.test;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
+import static com.vmware.lmock.test.LMAsserts.assertCollected;
 import com.vmware.lmock.exception.MockCreationException;
 import com.vmware.lmock.impl.Mock;
+import com.vmware.lmock.impl.Stubs;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Validation of the creation of mocks.
@@ -37,4 +42,106 @@ public class MockTest {
         List<?> myMock = Mock.getObject("myMock", List.class);
         assertEquals("myMock", myMock.toString());
     }
+
+    /**
+     * Verifies that the many mocks of the same class are distinct, although
+     * they share the same description of their class.
+     */
+    @Test
+    public void testManyMocksOfTheSameClass() {
+        List<?>[] mocks = new List<?>[1000];
+        for (int index = 0; index < mocks.length; index++) {
+            mocks[index] = Mock.getObject("mock" + index, List.class);
+        }
+
+        assertSame(mocks[0].getClass(), mocks[mocks.length - 1].getClass());
+        for (int index = 1; index < mocks.length; index++) {
+            assertFalse(mocks[index - 1].equals(mocks[index]));
+            assertEquals("mock" + index, mocks[index].toString());
+        }
+    }
+
+    /**
+     * Verifies that a batch of mocks are named after a given prefix.
+     */
+    @Test
+    public void testGetObjectsWithPrefix() {
+        List<?>[] mocks = Mock.getObjects("device", List.class, 100);
+        assertEquals(100, mocks.length);
+        for (int index = 0; index < mocks.length; index++) {
+            assertEquals("device" + index, mocks[index].toString());
+        }
+    }
+
+    /**
+     * Verifies that we cannot mock a batch of things that are not interfaces.
+     */
+    @Test
+    public void testGetObjectsOfInvalidClass() {
+        try {
+            Mock.getObjects(String.class, 10);
+            fail("mocked strings");
+        } catch (MockCreationException e) {
+        }
+    }
+
+    /**
+     * Verifies that the mocks created concurrently get distinct identifiers.
+     *
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    @Test
+    public void testGetObjectsConcurrently() throws InterruptedException {
+        final List<?>[][] batches = new List<?>[4][];
+        Thread[] threads = new Thread[batches.length];
+        for (int index = 0; index < threads.length; index++) {
+            final int batch = index;
+            threads[index] = new Thread() {
+                @Override
+                public void run() {
+                    batches[batch] = Mock.getObjects(List.class, 1000);
+                }
+            };
+            threads[index].start();
+        }
+
+        Set<String> names = new HashSet<String>();
+        for (int index = 0; index < threads.length; index++) {
+            threads[index].join();
+            for (List<?> mock : batches[index]) {
+                // The default names include the unique identifiers.
+                assertTrue(names.add(mock.toString()));
+            }
+        }
+        assertEquals(4000, names.size());
+    }
+
+    /**
+     * Creates a mock and uses it to specify a stub, so that its identity is
+     * resolved.
+     *
+     * @return A reference to the mock, which is then dropped.
+     */
+    private static WeakReference<Dalton> createAndResolveMock() {
+        final Dalton dalton = Mock.getObject(Dalton.class);
+        new Stubs() {
+            {
+                stub(dalton).ping();
+                willReturn(1);
+            }
+        };
+        return new WeakReference<Dalton>(dalton);
+    }
+
+    /**
+     * Verifies that resolving the identity of a mock does not keep it alive.
+     *
+     * @throws InterruptedException
+     *             Test interrupted.
+     */
+    @Test
+    public void testResolvedMockIsCollectable() throws InterruptedException {
+        assertCollected(createAndResolveMock());
+    }
 }
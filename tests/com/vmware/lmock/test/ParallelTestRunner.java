@@ -0,0 +1,273 @@
+/* **************************************************************************
+ * Copyright (C) 2010-2011 VMware, Inc. All rights reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0.
+ * Please see the LICENSE file to review the full text of the Apache License 2.0.
+ * You may not use this product except in compliance with the License.
+ * ************************************************************************** */
+package com.vmware.lmock.test;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * Executes all the tests of the test suite, running the test classes
+ * concurrently.
+ *
+ * <p>
+ * The test classes are the ones of <code>TestRunner</code>. Each class is
+ * loaded by its own class loader, along with its own copy of lmock, so that
+ * the static state of lmock is not shared between classes. Only JUnit is
+ * shared, to collect the results.
+ * </p>
+ *
+ * <p>
+ * Once all the classes are run, the runner reports the timing and result of
+ * each class, then the failures and the overall result, as JUnit does.
+ * </p>
+ *
+ * <p>
+ * User can pass the argument <code>-j N</code> to run at most <code>N</code>
+ * classes at a time (by default, one per available processor).
+ * </p>
+ */
+public class ParallelTestRunner {
+    /** Packages shared by all the test classes. */
+    private static final String[] sharedPackages = {
+        "java.", "javax.", "sun.", "org.junit.", "junit.", "org.hamcrest."
+    };
+
+    /**
+     * A class loader loading its own copy of the classes of the class path,
+     * but the shared ones.
+     */
+    private static final class IsolatingClassLoader extends URLClassLoader {
+        /**
+         * Creates a new loader.
+         *
+         * @param urls
+         *            the class path
+         * @param parent
+         *            the loader of the shared classes
+         */
+        IsolatingClassLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        /**
+         * Tells whether a class is shared with the other test classes.
+         *
+         * @param name
+         *            the class name
+         * @return <code>true</code> if the class is loaded by the parent.
+         */
+        private static boolean isShared(String name) {
+            for (String prefix : sharedPackages) {
+                if (name.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve)
+          throws ClassNotFoundException {
+            if (isShared(name)) {
+                return super.loadClass(name, resolve);
+            }
+
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                try {
+                    clazz = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    return super.loadClass(name, resolve);
+                }
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+    }
+
+    /**
+     * The outcome of a test class.
+     */
+    private static final class ClassResult {
+        /** The test class name. */
+        private final String name;
+        /** The JUnit result. */
+        private final Result result;
+        /** The time spent running the class, in milliseconds. */
+        private final long time;
+
+        /**
+         * Creates a new outcome.
+         *
+         * @param name
+         *            the test class name
+         * @param result
+         *            the JUnit result
+         * @param time
+         *            the time spent running the class, in milliseconds
+         */
+        ClassResult(String name, Result result, long time) {
+            this.name = name;
+            this.result = result;
+            this.time = time;
+        }
+    }
+    /** The class path of the test classes. */
+    private final URL[] classPath;
+    /** Maximum number of classes run at a time. */
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Creates a new runner for the current class path.
+     *
+     * @throws MalformedURLException
+     *             The class path is invalid.
+     */
+    private ParallelTestRunner() throws MalformedURLException {
+        String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+        classPath = new URL[entries.length];
+        for (int index = 0; index < entries.length; index++) {
+            classPath[index] = new File(entries[index]).toURI().toURL();
+        }
+    }
+
+    /**
+     * Checks the arguments passed to the runner, if any.
+     *
+     * @param args
+     *            the user arguments
+     */
+    private void collectUserArguments(String args[]) {
+        if (args != null && args.length > 1 && args[0].equals("-j")) {
+            threadCount = Math.max(1, Integer.parseInt(args[1]));
+        }
+    }
+
+    /**
+     * Creates the task running a test class in its own class loader.
+     *
+     * @param name
+     *            the test class name
+     * @return The task.
+     */
+    private Callable<ClassResult> createTask(final String name) {
+        return new Callable<ClassResult>() {
+            public ClassResult call() throws ClassNotFoundException {
+                ClassLoader loader = new IsolatingClassLoader(classPath,
+                  ParallelTestRunner.class.getClassLoader());
+                Thread thread = Thread.currentThread();
+                ClassLoader previousLoader = thread.getContextClassLoader();
+                thread.setContextClassLoader(loader);
+                try {
+                    long start = System.currentTimeMillis();
+                    Result result = new JUnitCore().run(loader.loadClass(name));
+                    return new ClassResult(name, result, System.currentTimeMillis() - start);
+                } finally {
+                    thread.setContextClassLoader(previousLoader);
+                }
+            }
+        };
+    }
+
+    /**
+     * Runs all the test classes and reports the results.
+     *
+     * @param args
+     *            the user supplied arguments
+     * @return <code>true</code> if all the tests succeeded.
+     * @throws InterruptedException
+     *             Interrupted while waiting for the results.
+     * @throws ExecutionException
+     *             A test class could not be run.
+     */
+    private boolean run(String args[]) throws InterruptedException, ExecutionException {
+        collectUserArguments(args);
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<ClassResult>> futures = new ArrayList<Future<ClassResult>>();
+        try {
+            for (String name : TestRunner.testList) {
+                futures.add(executor.submit(createTask(name)));
+            }
+
+            List<ClassResult> results = new ArrayList<ClassResult>();
+            for (Future<ClassResult> future : futures) {
+                results.add(future.get());
+            }
+            return report(results, System.currentTimeMillis() - start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Prints the results of the test classes.
+     *
+     * @param results
+     *            the results, per test class
+     * @param time
+     *            the total elapsed time, in milliseconds
+     * @return <code>true</code> if all the tests succeeded.
+     */
+    private boolean report(List<ClassResult> results, long time) {
+        int runCount = 0;
+        long classTime = 0;
+        List<Failure> failures = new ArrayList<Failure>();
+        for (ClassResult classResult : results) {
+            Result result = classResult.result;
+            System.out.println(classResult.name + ": " + result.getRunCount() + " tests, "
+              + result.getFailureCount() + " failures, " + classResult.time + " ms");
+            runCount += result.getRunCount();
+            classTime += classResult.time;
+            failures.addAll(result.getFailures());
+        }
+
+        System.out.println("Time: " + time + " ms (" + classTime + " ms in test classes, "
+          + threadCount + " threads)");
+        int index = 1;
+        for (Failure failure : failures) {
+            System.out.println(index++ + ") " + failure.getTestHeader());
+            System.out.print(failure.getTrace());
+        }
+
+        if (failures.isEmpty()) {
+            System.out.println("OK (" + runCount + " tests)");
+        } else {
+            System.out.println("Tests run: " + runCount + ",  Failures: " + failures.size());
+        }
+        return failures.isEmpty();
+    }
+
+    /**
+     * Main program entry.
+     *
+     * @param args
+     *            the program arguments
+     * @throws Exception
+     *             The tests could not be run.
+     */
+    public static void main(String args[]) throws Exception {
+        boolean success = new ParallelTestRunner().run(args);
+        System.exit(success ? 0 : 1);
+    }
+}
@@ -7,6 +7,7 @@
  * ************************************************************************** */
 package com.vmware.lmock.test;
 
+import com.vmware.lmock.checker.Checker;
 import com.vmware.lmock.checker.ThreadChecker;
 import com.vmware.lmock.exception.EmptyRoleException;
 import com.vmware.lmock.exception.SchemerException;
@@ -23,6 +24,8 @@ import com.vmware.lmock.impl.Story;
 import com.vmware.lmock.impl.Stubs;
 import com.vmware.lmock.masquerade.Schemer;
 import com.vmware.lmock.mt.Actor;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -673,4 +676,73 @@ public class SimpleMTTest {
             Schemer.end();
         }
     }
+
+    /**
+     * Verifies that actors following independent scenarios are not serialized.
+     *
+     * <p>
+     * The first actor is stuck in a checker until the second actor completes
+     * an invocation. This works if and only if the two invocations are not
+     * processed under a common lock.
+     * </p>
+     */
+    @Test
+    public void testIndependentScenariosDoNotContend() throws InterruptedException {
+        final CountDownLatch firstIsChecking = new CountDownLatch(1);
+        final CountDownLatch secondIsDone = new CountDownLatch(1);
+        final Checker<Object> waitingChecker = new Checker<Object>() {
+            public boolean valueIsCompatibleWith(Object value) {
+                firstIsChecking.countDown();
+                try {
+                    return secondIsDone.await(JOIN_TIMESOUT_AFTER, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+
+            public Class<?> getRelatedClass() {
+                return Object.class;
+            }
+        };
+
+        final Thread first = new Thread() {
+            @Override
+            public void run() {
+                joe.setObject("first");
+            }
+        };
+
+        final Thread second = new Thread() {
+            @Override
+            public void run() {
+                jack.setObject("second");
+                secondIsDone.countDown();
+            }
+        };
+
+        Actor[] actors = {
+            anActorForThread(first).following(new Scenario() {
+                {
+                    expect(joe).setObject(with(waitingChecker));
+                    occurs(1);
+                }
+            }),
+            anActorForThread(second).following(new Scenario() {
+                {
+                    expect(jack).setObject("second");
+                    occurs(1);
+                }
+            })
+        };
+
+        Story story = createWithMultipleActors(actors);
+        story.begin();
+        first.start();
+        assertTrue(firstIsChecking.await(JOIN_TIMESOUT_AFTER, TimeUnit.MILLISECONDS));
+        second.start();
+        first.join(JOIN_TIMESOUT_AFTER);
+        second.join(JOIN_TIMESOUT_AFTER);
+        assertEveryActorMatchesADeadThread(actors);
+        story.end();
+    }
 }
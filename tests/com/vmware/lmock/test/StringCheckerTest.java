@@ -142,6 +142,54 @@ public class StringCheckerTest {
         assertFalse(instance.valueIsCompatibleWith("with a string longer"));
     }
 
+    /**
+     * Validates <code>valuesStartWith</code> when case sensitive and
+     * insensitive.
+     */
+    @Test
+    public void testValuesStartWith() {
+        StringChecker instance = StringChecker.valuesStartWith("A string");
+        assertFalse(instance.valueIsCompatibleWith("a string"));
+        assertTrue(instance.valueIsCompatibleWith("A string"));
+        assertTrue(instance.valueIsCompatibleWith("A string longer"));
+        assertFalse(instance.valueIsCompatibleWith("with A string"));
+        assertFalse(instance.valueIsCompatibleWith("A str"));
+        instance.caseInsensitive();
+        assertTrue(instance.valueIsCompatibleWith("a string"));
+        assertTrue(instance.valueIsCompatibleWith("a strIng longer"));
+        assertFalse(instance.valueIsCompatibleWith("with a string"));
+    }
+
+    /**
+     * Validates <code>valuesEndWith</code> when case sensitive and insensitive.
+     */
+    @Test
+    public void testValuesEndWith() {
+        StringChecker instance = StringChecker.valuesEndWith("A string");
+        assertFalse(instance.valueIsCompatibleWith("a string"));
+        assertTrue(instance.valueIsCompatibleWith("A string"));
+        assertTrue(instance.valueIsCompatibleWith("with A string"));
+        assertFalse(instance.valueIsCompatibleWith("A string longer"));
+        assertFalse(instance.valueIsCompatibleWith("string"));
+        instance.caseInsensitive();
+        assertTrue(instance.valueIsCompatibleWith("a string"));
+        assertTrue(instance.valueIsCompatibleWith("with a strIng"));
+        assertFalse(instance.valueIsCompatibleWith("a string longer"));
+    }
+
+    /**
+     * Verifies that case insensitive patterns keep their character classes.
+     */
+    @Test
+    public void testCaseInsensitiveMatchWithCharacterClasses() {
+        StringChecker instance = StringChecker.valuesMatch("\\S+ [A-Z]+");
+        assertFalse(instance.valueIsCompatibleWith("A string"));
+        assertTrue(instance.valueIsCompatibleWith("A STRING"));
+        instance.caseInsensitive();
+        assertTrue(instance.valueIsCompatibleWith("A string"));
+        assertFalse(instance.valueIsCompatibleWith("A string longer"));
+    }
+
     /**
      * Validates the string describing matches.
      */
@@ -153,5 +201,9 @@ public class StringCheckerTest {
         assertEquals("contains(hello world)", instance.toString());
         instance = StringChecker.valuesMatch(".*hello world$");
         assertEquals("matches(.*hello world$)", instance.toString());
+        instance = StringChecker.valuesStartWith("hello");
+        assertEquals("starts with(hello)", instance.toString());
+        instance = StringChecker.valuesEndWith("world");
+        assertEquals("ends with(world)", instance.toString());
     }
 }
@@ -14,8 +14,16 @@ import static com.vmware.lmock.test.Dalton.william;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
+import com.vmware.lmock.checker.Checker;
+import com.vmware.lmock.checker.LongChecker;
+import com.vmware.lmock.checker.StringChecker;
+import com.vmware.lmock.impl.Mock;
 import com.vmware.lmock.impl.Scenario;
 import com.vmware.lmock.impl.Story;
 import com.vmware.lmock.impl.Stubs;
@@ -25,6 +33,12 @@ import com.vmware.lmock.masquerade.Schemer;
  * Validation of stubs at runtime.
  */
 public class StubTest {
+    /** An interface inheriting some of its methods. */
+    public interface Rank extends Comparable<String> {
+        /** @return The level of this rank. */
+        int level();
+    }
+
     /**
      * Verifies that stubs work with empty scenarios.
      */
@@ -251,4 +265,247 @@ public class StubTest {
         assertEquals(22, joe.ping(jack.next().next()));
         Schemer.end();
     }
+
+    /**
+     * Verifies that the methods inherited by a mocked interface can be stubbed
+     * as well as its own methods.
+     */
+    @Test
+    public void testStubsOnInheritedMethods() {
+        final Rank rank = Mock.getObject(Rank.class);
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(rank).level();
+                willReturn(5);
+                stub(rank).compareTo("x");
+                willReturn(3);
+            }
+        });
+
+        story.begin();
+        for (int occur = 0; occur < 10; occur++) {
+            assertEquals(5, rank.level());
+            assertEquals(3, rank.compareTo("x"));
+        }
+        story.end();
+    }
+
+    /**
+     * Verifies that the youngest stub still prevails when a method has many
+     * stubs expecting different values.
+     */
+    @Test
+    public void testStubPriorityWithManyStubs() {
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(joe).ping(anyOf(Dalton.class), anyOf(String.class));
+                willReturn(-1);
+                for (int index = 0; index < 1000; index++) {
+                    stub(joe).ping(anyOf(Dalton.class), with("message" + index));
+                    willReturn(index);
+                }
+                stub(joe).ping(with(william), anyOf(String.class));
+                willReturn(-2);
+                stub(joe).ping(with(jack), with("message5"));
+                willReturn(-3);
+            }
+        });
+
+        story.begin();
+        for (int index = 0; index < 1000; index++) {
+            assertEquals(index, joe.ping(averell, "message" + index));
+        }
+        assertEquals(-1, joe.ping(averell, "another message"));
+        assertEquals(-1, joe.ping(averell, (String) null));
+        assertEquals(-2, joe.ping(william, "message5"));
+        assertEquals(-3, joe.ping(jack, "message5"));
+        assertEquals(6, joe.ping(jack, "message6"));
+        story.end();
+    }
+
+    /**
+     * Verifies that the youngest stub prevails among many stubs comparing a
+     * string argument with reference strings.
+     */
+    @Test
+    public void testStubPriorityWithManyStringStubs() {
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(joe).ping(anyOf(Dalton.class), anyOf(String.class));
+                willReturn(-1);
+                for (int index = 0; index < 1000; index++) {
+                    stub(joe).ping(anyOf(Dalton.class),
+                      with(StringChecker.valuesContain("keyword" + index)));
+                    willReturn(index);
+                }
+                StringChecker checker = StringChecker.valuesEqual("HELLO");
+                checker.caseInsensitive();
+                stub(joe).ping(anyOf(Dalton.class), with(checker));
+                willReturn(-2);
+                stub(joe).ping(anyOf(Dalton.class), with(StringChecker.valuesStartWith("error:")));
+                willReturn(-3);
+                stub(joe).ping(anyOf(Dalton.class), with(StringChecker.valuesEndWith("!")));
+                willReturn(-4);
+                stub(joe).ping(with(william), with(StringChecker.valuesContain("keyword")));
+                willReturn(-5);
+                stub(joe).ping(anyOf(Dalton.class), with(StringChecker.valuesContain("abcx")));
+                willReturn(-6);
+                stub(joe).ping(anyOf(Dalton.class), with(StringChecker.valuesContain("bcd")));
+                willReturn(-7);
+            }
+        });
+
+        story.begin();
+        for (int index = 0; index < 1000; index++) {
+            assertEquals(index, joe.ping(averell, "found keyword" + index + " in line"));
+        }
+        assertEquals(-1, joe.ping(averell, "KEYWORD12"));
+        assertEquals(-1, joe.ping(averell, "another message"));
+        assertEquals(-1, joe.ping(averell, (String) null));
+        assertEquals(-2, joe.ping(averell, "hello"));
+        assertEquals(-2, joe.ping(averell, "HeLLo"));
+        assertEquals(-1, joe.ping(averell, "hello world"));
+        assertEquals(-3, joe.ping(averell, "error: keyword12"));
+        assertEquals(12, joe.ping(averell, "warning: keyword12"));
+        assertEquals(-4, joe.ping(averell, "keyword12!"));
+        assertEquals(-1, joe.ping(averell, "!?"));
+        assertEquals(-5, joe.ping(william, "keyword12"));
+        assertEquals(-1, joe.ping(william, "Keyword12"));
+        assertEquals(-7, joe.ping(averell, "abcd"));
+        assertEquals(-6, joe.ping(averell, "aabcx"));
+        story.end();
+    }
+
+    /**
+     * Verifies that a stub comparing a string argument with a reference is
+     * checked once, even if the reference occurs many times in the value.
+     */
+    @Test
+    public void testStringStubCheckedOnceForManyOccurrences() {
+        final int[] checks = new int[1];
+        final Checker<Dalton> rejecting = new Checker<Dalton>() {
+            public boolean valueIsCompatibleWith(Dalton value) {
+                checks[0]++;
+                return false;
+            }
+
+            public Class<?> getRelatedClass() {
+                return Dalton.class;
+            }
+        };
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(joe).ping(anyOf(Dalton.class), anyOf(String.class));
+                willReturn(-1);
+                stub(joe).ping(with(rejecting), with(StringChecker.valuesContain("a")));
+                willReturn(1);
+            }
+        });
+
+        StringBuilder value = new StringBuilder();
+        for (int index = 0; index < 100; index++) {
+            value.append('a');
+        }
+
+        story.begin();
+        assertEquals(-1, joe.ping(averell, value.toString()));
+        assertEquals(1, checks[0]);
+        story.end();
+    }
+
+    /**
+     * Invokes <code>joe.setLong</code>, stubbed to throw an exception telling
+     * which stub was selected.
+     *
+     * @param value
+     *            the argument value
+     * @return The message of the exception thrown by the stub.
+     */
+    private static String getStubSelectedBySetLong(long value) {
+        try {
+            joe.setLong(value);
+            fail("stub did not throw");
+        } catch (IllegalStateException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
+    /**
+     * Verifies that the youngest stub prevails among many stubs expecting an
+     * argument within ranges of values.
+     */
+    @Test
+    public void testStubPriorityWithManyRangeStubs() {
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(joe).setLong(anyOf(Long.class));
+                willThrow(new IllegalStateException("any"));
+                for (int index = 0; index < 1000; index++) {
+                    stub(joe).setLong(with(LongChecker.valuesBetween(index * 10L, index * 10L + 9)));
+                    willThrow(new IllegalStateException("shard" + index));
+                }
+                stub(joe).setLong(with(LongChecker.valuesGreaterOrEqualTo(5000)));
+                willThrow(new IllegalStateException("upper"));
+                stub(joe).setLong(with(LongChecker.valuesBetween(42, 42)));
+                willThrow(new IllegalStateException("answer"));
+            }
+        });
+
+        story.begin();
+        for (long value = 0; value < 5000; value++) {
+            String expected = (value == 42) ? "answer" : "shard" + (value / 10);
+            assertEquals(expected, getStubSelectedBySetLong(value));
+        }
+        assertEquals("upper", getStubSelectedBySetLong(5000));
+        assertEquals("upper", getStubSelectedBySetLong(Long.MAX_VALUE));
+        assertEquals("any", getStubSelectedBySetLong(-1));
+        story.end();
+    }
+
+    /**
+     * Verifies that stubs of overloaded methods with the same number of
+     * arguments don't compete with each other.
+     */
+    @Test
+    public void testStubsOnOverloadedMethods() {
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(joe).ping(anyOf(Dalton.class), anyOf(String.class));
+                willReturn(1);
+                stub(joe).ping(anyOf(Dalton.class), anyOf(String[].class));
+                willReturn(2);
+            }
+        });
+
+        story.begin();
+        assertEquals(1, joe.ping(jack, (String) null));
+        assertEquals(2, joe.ping(jack, (String[]) null));
+        assertEquals(1, joe.ping(jack, "message"));
+        assertEquals(2, joe.ping(jack, "message", "message"));
+        story.end();
+    }
+
+    /**
+     * Verifies that a stub expecting a mutable value still matches this value
+     * once it was modified after the stub registration.
+     */
+    @Test
+    public void testStubWithMutatedValue() {
+        @SuppressWarnings("unchecked")
+        final List<Object> list = Mock.getObject(List.class);
+        final List<String> reference = new ArrayList<String>();
+        Story story = Story.create(null, new Stubs() {
+            {
+                stub(list).indexOf(reference);
+                willReturn(42);
+            }
+        });
+
+        story.begin();
+        reference.add("x");
+        assertEquals(42, list.indexOf(reference));
+        assertEquals(42, list.indexOf(Arrays.asList("x")));
+        story.end();
+    }
 }
@@ -34,17 +34,21 @@ public class TestRunner {
         return TestRunner.class.getPackage().getName() + "." + name;
     }
     /**
-     * A rough list of tests.
+     * A rough list of tests, also run by <code>ParallelTestRunner</code>.
      */
-    private static final String[] testList = {
+    static final String[] testList = {
+        test("AllocationTest"), //
         test("AnyClauseSpecificationTest"), //
         test("AnyClauseTest"), //
+        test("AnyOrderTest"), //
         test("AppendTest"), //
         test("ByteCheckerTest"), //
         test("CharacterCheckerTest"), //
+        test("CleanerTest"), //
         test("DoubleCheckerTest"), //
         test("EnumCheckerTest"), //
         test("FloatCheckerTest"), //
+        test("GeneratedMockTest"), //
         test("IntegerCheckerTest"), //
         test("InvocationHooksTest"), //
         test("LongCheckerTest"), //